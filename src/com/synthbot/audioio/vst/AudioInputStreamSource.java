@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * An <code>AudioSource</code> which reads from an <code>AudioInputStream</code>, such as an audio file.
+ * It is not real-time: data is read as fast as the stream is consumed.
+ */
+public class AudioInputStreamSource implements AudioSource {
+  
+  private final AudioInputStream audioInputStream;
+  
+  public AudioInputStreamSource(AudioInputStream audioInputStream) {
+    if (audioInputStream == null) {
+      throw new NullPointerException("The audio input stream is null.");
+    }
+    this.audioInputStream = audioInputStream;
+  }
+  
+  /**
+   * Reads from an audio file. Formats not supported by <code>SampleFormat</code>, such as 8-bit or
+   * compressed audio, are converted to 16-bit PCM if the system can do so.
+   * @throws IOException  Thrown if the file cannot be read.
+   * @throws UnsupportedAudioFileException  Thrown if the file is not a supported audio file.
+   */
+  public AudioInputStreamSource(File file) throws IOException, UnsupportedAudioFileException {
+    this(toSupportedFormat(AudioSystem.getAudioInputStream(file)));
+  }
+  
+  private static AudioInputStream toSupportedFormat(AudioInputStream stream) {
+    AudioFormat format = stream.getFormat();
+    try {
+      SampleFormat.fromAudioFormat(format);
+      return stream;
+    } catch (IllegalArgumentException iae) {
+      return AudioSystem.getAudioInputStream(SampleFormat.PCM_16.toAudioFormat(format.getSampleRate(), format.getChannels(), false), stream);
+    }
+  }
+  
+  public AudioFormat getFormat() {
+    return audioInputStream.getFormat();
+  }
+  
+  public boolean isRealtime() {
+    return false;
+  }
+  
+  public int read(byte[] data, int offset, int length) {
+    int frameSize = audioInputStream.getFormat().getFrameSize();
+    length -= length % frameSize;
+    int numRead = 0;
+    try {
+      while (numRead < length) {
+        int n = audioInputStream.read(data, offset + numRead, length - numRead);
+        if (n < 0) {
+          break;
+        }
+        numRead += n;
+      }
+    } catch (IOException ioe) {
+      ioe.printStackTrace(System.err); // treated as the end of the stream
+    }
+    numRead -= numRead % frameSize;
+    return (numRead > 0) ? numRead : -1;
+  }
+  
+  public int getBufferedFrames() {
+    return 0;
+  }
+  
+  public void close() {
+    try {
+      audioInputStream.close();
+    } catch (IOException ioe) {
+      ioe.printStackTrace(System.err);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An AudioSink consumes the interleaved bytes produced by a <code>JVstAudioThread</code>. A sink is
+ * either real-time, and paces the stream by blocking in <code>write</code>, or it consumes data as
+ * fast as it is produced.
+ */
+public interface AudioSink {
+  
+  /**
+   * Returns the format of the bytes passed to <code>write</code>.
+   */
+  public AudioFormat getFormat();
+  
+  /**
+   * Returns true if this sink consumes data at the rate of its format, so that the writer must supply
+   * a block, silent if necessary, whenever the sink is ready. False if the writer may wait for data.
+   */
+  public boolean isRealtime();
+  
+  /**
+   * Writes whole frames to the sink, blocking until there is room for them.
+   */
+  public void write(byte[] data, int offset, int length);
+  
+  /**
+   * Returns true if all previously written data has already been consumed, so that the sink has run,
+   * or is about to run, dry. Always false for sinks which are not real-time.
+   */
+  public boolean isStarved();
+  
+  /**
+   * Returns the number of frames which have been written but not yet consumed.
+   */
+  public int getBufferedFrames();
+  
+  /**
+   * Blocks until all written data has been consumed.
+   */
+  public void drain();
+  
+  /**
+   * Releases any resources held by the sink.
+   */
+  public void close();
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An AudioSource supplies the interleaved bytes read by a <code>JVstAudioThread</code> as plugin input.
+ * A source is either real-time, and paces reading by blocking in <code>read</code>, or it supplies data
+ * as fast as it is read.
+ */
+public interface AudioSource {
+  
+  /**
+   * Returns the format of the bytes returned by <code>read</code>.
+   */
+  public AudioFormat getFormat();
+  
+  /**
+   * Returns true if this source produces data at the rate of its format, so that data which cannot be
+   * buffered must be dropped. False if the reader may wait for room.
+   */
+  public boolean isRealtime();
+  
+  /**
+   * Reads whole frames from the source, blocking until <code>length</code> bytes are read or the source ends.
+   * @return  The number of bytes read, or -1 if the source has ended.
+   */
+  public int read(byte[] data, int offset, int length);
+  
+  /**
+   * Returns the number of frames which have been captured but not yet read.
+   */
+  public int getBufferedFrames();
+  
+  /**
+   * Releases any resources held by the source.
+   */
+  public void close();
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An <code>AudioSink</code> which discards all data, but consumes it at the sample rate of its format, as
+ * a sound card would. It models a device buffer of a given size: <code>write</code> blocks until the
+ * modelled buffer has room, waiting with <code>LockSupport.parkNanos</code>. This allows real-time
+ * behaviour to be tested on machines without a sound card.
+ * 
+ * The position of the modelled device is computed from the total number of frames written and a start
+ * time, rather than by accumulating per-block waits, so that oversleeping in one block is corrected in
+ * the next and the clock does not drift. If the writer falls behind, the modelled device keeps playing
+ * silence, as a real one would; the start time is then moved forward, and the event is counted.
+ */
+public class ClockedNullSink implements AudioSink {
+  
+  private final AudioFormat format;
+  private final double nanosPerFrame;
+  private final long bufferFrames;
+  private long startNanos; // the time at which the modelled device started playing the first frame written
+  private long numFramesWritten;
+  private volatile long starvationCount;
+  
+  /**
+   * @param bufferSize  The size of the modelled device buffer in bytes.
+   */
+  public ClockedNullSink(AudioFormat format, int bufferSize) {
+    if (format == null) {
+      throw new NullPointerException("The audio format is null.");
+    }
+    if (bufferSize < format.getFrameSize()) {
+      throw new IllegalArgumentException("The buffer must hold at least one frame: " + bufferSize);
+    }
+    this.format = format;
+    nanosPerFrame = 1000000000.0 / format.getFrameRate();
+    bufferFrames = bufferSize / format.getFrameSize();
+    startNanos = -1L;
+    numFramesWritten = 0L;
+    starvationCount = 0L;
+  }
+  
+  public AudioFormat getFormat() {
+    return format;
+  }
+  
+  public boolean isRealtime() {
+    return true;
+  }
+  
+  /**
+   * Returns the number of frames which the modelled device has played by the given time.
+   */
+  private long playedFrames(long nanos) {
+    return (long) ((nanos - startNanos) / nanosPerFrame);
+  }
+  
+  public void write(byte[] data, int offset, int length) {
+    long now = System.nanoTime();
+    if (startNanos < 0L) {
+      startNanos = now;
+    } else if (playedFrames(now) > numFramesWritten) {
+      // the device ran dry and played silence in the meantime, so it is now further ahead
+      starvationCount++;
+      startNanos = now - (long) (numFramesWritten * nanosPerFrame);
+    }
+    numFramesWritten += length / format.getFrameSize();
+    
+    // wait until the modelled buffer has room for the new frames
+    long readyNanos = startNanos + (long) ((numFramesWritten - bufferFrames) * nanosPerFrame);
+    while ((now = System.nanoTime()) < readyNanos) {
+      LockSupport.parkNanos(this, readyNanos - now);
+    }
+  }
+  
+  public boolean isStarved() {
+    return startNanos >= 0L && playedFrames(System.nanoTime()) >= numFramesWritten;
+  }
+  
+  public int getBufferedFrames() {
+    if (startNanos < 0L) {
+      return 0;
+    }
+    return (int) Math.max(0L, numFramesWritten - playedFrames(System.nanoTime()));
+  }
+  
+  public void drain() {
+    if (startNanos < 0L) {
+      return;
+    }
+    long drainedNanos = startNanos + (long) (numFramesWritten * nanosPerFrame);
+    long now;
+    while ((now = System.nanoTime()) < drainedNanos) {
+      LockSupport.parkNanos(this, drainedNanos - now);
+    }
+  }
+  
+  public void close() {
+    // nothing to release
+  }
+  
+  /**
+   * Returns the number of times that the modelled device ran dry because the writer was late.
+   */
+  public long getStarvationCount() {
+    return starvationCount;
+  }
+  
+  /**
+   * Returns the number of frames written to this sink.
+   */
+  public long getFramesWritten() {
+    return numFramesWritten;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FloatRingBuffer is a lock-free ring buffer of samples for exactly one writing thread and one
+ * reading thread. Neither side ever blocks: <code>write</code> and <code>read</code> transfer as many
+ * samples as fit or are available, and return how many that was.
+ */
+public class FloatRingBuffer {
+  
+  private final float[] buffer;
+  private final int mask;
+  // the total number of samples ever written and read. Each is only advanced by its own side.
+  private final AtomicLong writePosition;
+  private final AtomicLong readPosition;
+  
+  /**
+   * @param minCapacity  The minimum number of samples which the buffer can hold. The capacity is
+   * rounded up to a power of two.
+   */
+  public FloatRingBuffer(int minCapacity) {
+    if (minCapacity <= 0 || minCapacity > (1 << 30)) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + minCapacity);
+    }
+    int capacity = Integer.highestOneBit(minCapacity);
+    if (capacity < minCapacity) {
+      capacity <<= 1;
+    }
+    buffer = new float[capacity];
+    mask = capacity - 1;
+    writePosition = new AtomicLong(0L);
+    readPosition = new AtomicLong(0L);
+  }
+  
+  /**
+   * Copies up to <code>length</code> samples into the buffer. Must only be called by the writing thread.
+   * @return  The number of samples written.
+   */
+  public int write(float[] source, int offset, int length) {
+    long position = writePosition.get();
+    int numWritten = Math.min(length, buffer.length - (int) (position - readPosition.get()));
+    int index = (int) position & mask;
+    int firstPart = Math.min(numWritten, buffer.length - index);
+    System.arraycopy(source, offset, buffer, index, firstPart);
+    System.arraycopy(source, offset + firstPart, buffer, 0, numWritten - firstPart);
+    writePosition.lazySet(position + numWritten); // publishes the samples to the reader
+    return numWritten;
+  }
+  
+  /**
+   * Copies up to <code>length</code> samples out of the buffer. Must only be called by the reading thread.
+   * @return  The number of samples read.
+   */
+  public int read(float[] destination, int offset, int length) {
+    long position = readPosition.get();
+    int numRead = Math.min(length, (int) (writePosition.get() - position));
+    int index = (int) position & mask;
+    int firstPart = Math.min(numRead, buffer.length - index);
+    System.arraycopy(buffer, index, destination, offset, firstPart);
+    System.arraycopy(buffer, 0, destination, offset + firstPart, numRead - firstPart);
+    readPosition.lazySet(position + numRead); // returns the space to the writer
+    return numRead;
+  }
+  
+  /**
+   * Returns the number of samples which may be read.
+   */
+  public int available() {
+    return (int) (writePosition.get() - readPosition.get());
+  }
+  
+  /**
+   * Returns the number of samples which may be written.
+   */
+  public int remaining() {
+    return buffer.length - available();
+  }
+  
+  public int getCapacity() {
+    return buffer.length;
+  }
+}
@@ -22,85 +22,610 @@
 package com.synthbot.audioio.vst;
 
 import com.synthbot.audioplugin.vst.vst2.JVstHost2;
+import com.synthbot.audioplugin.vst.vst2.VstPinProperties;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
 
 /**
  * JVstAudioThread implements a continuously running audio stream, calling
  * processReplacing on a single vst and sending the result to the sound output.
+ * 
+ * Rendering and output are decoupled. The thread which runs this object renders blocks into a
+ * lock-free ring buffer, staying up to a target fill level ahead of the device, while a separate
+ * writer thread moves blocks from the ring buffer to the sound output. Jitter in rendering is
+ * therefore absorbed by the ring buffer instead of adding to the jitter of the device. The stream
+ * runs until <code>stop</code> is called.
+ * 
+ * Any plugin output may be routed to any device channel, so multi-output plugins can play through
+ * multichannel devices. By default the first stereo pair is played.
+ * 
+ * Output goes to an <code>AudioSink</code>. The constructors without a sink open the default sound
+ * output, and exit the VM if it is unavailable. Pass a <code>NullSink</code> or <code>ClockedNullSink</code>
+ * to run without a sound card.
+ * 
+ * The plugin inputs are silent unless an <code>AudioSource</code> is given, such as a
+ * <code>TargetDataLineSource</code> to process a live signal, or an <code>AudioInputStreamSource</code>
+ * to process a file. A reader thread converts the source's bytes and passes them to the renderer
+ * through a second lock-free ring buffer, and the renderer then only renders when an input block is
+ * available. The round-trip latency, from capture to playback, is estimated for every block from
+ * the fill of the buffers.
  */
 public class JVstAudioThread implements Runnable {
 
+  /**
+   * The default depth of the ring buffer, in blocks.
+   */
+  public static final int DEFAULT_RING_BLOCKS = 4;
+  
+  /**
+   * The default number of blocks which the renderer tries to keep in the ring buffer.
+   */
+  public static final int DEFAULT_TARGET_BLOCKS = 2;
+  
   private JVstHost2 vst;
   private final float[][] fInputs;
   private final float[][] fOutputs;
+  private final float[] renderBlock; // interleaved, written by the render thread
+  private final float[] outputBlock; // interleaved, read by the writer thread
   private final byte[] bOutput;
   private int blockSize;
   private int numOutputs;
-  private int numAudioOutputs;
+  private int numAudioOutputs; // the number of device channels
+  private final int[] outputRouting; // the plugin output played on each device channel, or -1 for silence
+  private final float[] silence;
   private AudioFormat audioFormat;
-  private SourceDataLine sourceDataLine;
-
-  private static final float ShortMaxValueAsFloat = (float) Short.MAX_VALUE;
+  private final AudioSink sink;
+  private final SampleConverter sampleConverter;
+  private final FloatRingBuffer ringBuffer;
+  private final int targetFill; // in samples
+  private final long blockNanos;
+  
+  // the input path. The source is null if the plugin inputs are silent.
+  private final AudioSource source;
+  private final int[] inputRouting; // the source channel read by each plugin input, or -1 for silence
+  private final int numSourceChannels;
+  private final SampleConverter inputConverter;
+  private final byte[] bInput;
+  private final float[] captureBlock; // interleaved, written by the reader thread
+  private final float[] inputBlock; // interleaved, read by the render thread
+  private final FloatRingBuffer inputRingBuffer;
+  private volatile boolean isSourceEnded;
+  private int initialDelay; // of the plugin, read when the stream starts
+  
+  private volatile boolean isStopped;
+  private volatile Thread renderThread;
+  private volatile Thread writerThread;
+  private volatile Thread readerThread;
+  
+  // statistics, only written by the writer thread
+  private volatile long underrunCount;
+  private volatile long xrunCount;
+  private volatile int minFillFrames;
+  private volatile int maxFillFrames;
+  private volatile long totalFillFrames;
+  private volatile long numFillMeasurements;
+  private volatile long inputOverrunCount; // written by the reader thread
+  private volatile int sourceBufferedFrames; // written by the reader thread
+  private volatile int sinkBufferedFrames;
+  private volatile int latencyFrames; // written by the render thread
+  private volatile int maxLatencyFrames;
 
   public JVstAudioThread(JVstHost2 vst) {
+    this(vst, DEFAULT_RING_BLOCKS, DEFAULT_TARGET_BLOCKS);
+  }
+  
+  public JVstAudioThread(JVstHost2 vst, int ringBlocks, int targetBlocks) {
+    this(vst, ringBlocks, targetBlocks, SampleFormat.PCM_16, false);
+  }
+  
+  public JVstAudioThread(JVstHost2 vst, int ringBlocks, int targetBlocks, SampleFormat format, boolean isDithered) {
+    // because most machines do not offer more than 2 output channels
+    this(vst, ringBlocks, targetBlocks, format, isDithered, directOutputRouting(Math.min(2, vst.numOutputs())));
+  }
+  
+  /**
+   * @param ringBlocks  The depth of the ring buffer between the renderer and the device writer, in blocks.
+   * @param targetBlocks  The number of blocks which the renderer tries to keep in the ring buffer.
+   * More blocks absorb more jitter, at the cost of latency.
+   * @param format  The little-endian sample format written to the sound output.
+   * @param isDithered  True if TPDF dither should be added to integer output formats.
+   * @param outputRouting  For each device channel, the index of the plugin output played on it, or -1
+   * for silence. The length of the array is the number of device channels. See <code>defaultOutputRouting</code>.
+   */
+  public JVstAudioThread(JVstHost2 vst, int ringBlocks, int targetBlocks, SampleFormat format, boolean isDithered, int[] outputRouting) {
+    this(vst, ringBlocks, targetBlocks, isDithered, outputRouting, openDefaultSink(vst, format, outputRouting.length));
+  }
+  
+  /**
+   * Opens the default sound output with a buffer of one block, or exits the VM if that is not possible.
+   */
+  private static AudioSink openDefaultSink(JVstHost2 vst, SampleFormat format, int numChannels) {
+    AudioFormat audioFormat = format.toAudioFormat(vst.getSampleRate(), numChannels, false);
+    try {
+      return new SourceDataLineSink(audioFormat, vst.getBlockSize() * audioFormat.getFrameSize());
+    } catch (LineUnavailableException lue) {
+      lue.printStackTrace(System.err);
+      System.exit(1);
+      return null;
+    }
+  }
+  
+  /**
+   * Creates an audio thread which writes to the given sink. The sample format and byte order are those of the
+   * sink's format, and its number of channels must equal the length of <code>outputRouting</code>.
+   * @param isDithered  True if TPDF dither should be added to integer output formats.
+   * @throws IllegalArgumentException  Thrown if the sink's format is not supported, or does not match the routing.
+   */
+  public JVstAudioThread(JVstHost2 vst, int ringBlocks, int targetBlocks, boolean isDithered, int[] outputRouting, AudioSink sink) {
+    this(vst, ringBlocks, targetBlocks, isDithered, outputRouting, sink, null, null);
+  }
+  
+  /**
+   * Creates an audio thread which processes the given source and writes to the given sink.
+   * @param source  The source of the plugin inputs, or null for silence. Its sample rate must be that of the plugin.
+   * @param inputRouting  For each plugin input, the index of the source channel which it reads, or -1 for
+   * silence. The length of the array must equal the number of plugin inputs. See <code>defaultInputRouting</code>.
+   * Ignored if <code>source</code> is null.
+   * @throws IllegalArgumentException  Thrown if the sink's or source's format is not supported, or does not
+   * match the routing or the plugin.
+   */
+  public JVstAudioThread(JVstHost2 vst, int ringBlocks, int targetBlocks, boolean isDithered, int[] outputRouting,
+      AudioSink sink, AudioSource source, int[] inputRouting) {
+    if (targetBlocks <= 0 || targetBlocks > ringBlocks) {
+      throw new IllegalArgumentException("The target fill must be between 1 and the ring depth, " + ringBlocks + ": " + targetBlocks);
+    }
     this.vst = vst;
     numOutputs = vst.numOutputs();
-    numAudioOutputs = Math.min(2, numOutputs); // because most machines do not offer more than 2 output channels
+    for (int output : outputRouting) {
+      if (output < -1 || output >= numOutputs) {
+        throw new IllegalArgumentException("Routed outputs must be between 0 and " + numOutputs + ", or -1 for silence: " + output);
+      }
+    }
+    this.outputRouting = outputRouting.clone();
+    numAudioOutputs = outputRouting.length;
+    this.sink = sink;
+    audioFormat = sink.getFormat();
+    SampleFormat format = SampleFormat.fromAudioFormat(audioFormat);
+    if (audioFormat.getChannels() != numAudioOutputs) {
+      throw new IllegalArgumentException("The sink must have one channel per routed output: " + audioFormat.getChannels() + " != " + numAudioOutputs);
+    }
     blockSize = vst.getBlockSize();
+    silence = new float[blockSize];
     fInputs = new float[vst.numInputs()][blockSize];
     fOutputs = new float[numOutputs][blockSize];
-    bOutput = new byte[numAudioOutputs * blockSize * 2];
-
-    audioFormat = new AudioFormat((int) vst.getSampleRate(), 16, numAudioOutputs, true, false);
-    DataLine.Info dataLineInfo = new DataLine.Info(SourceDataLine.class, audioFormat);
-
-    sourceDataLine = null;
-    try {
-      sourceDataLine = (SourceDataLine) AudioSystem.getLine(dataLineInfo);
-      sourceDataLine.open(audioFormat, bOutput.length);
-      sourceDataLine.start();
-    } catch (LineUnavailableException lue) {
-      lue.printStackTrace(System.err);
-      System.exit(1);
+    renderBlock = new float[numAudioOutputs * blockSize];
+    outputBlock = new float[numAudioOutputs * blockSize];
+    sampleConverter = new SampleConverter(format, audioFormat.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, isDithered);
+    bOutput = new byte[numAudioOutputs * blockSize * format.getBytesPerSample()];
+    ringBuffer = new FloatRingBuffer(Math.max(1, ringBlocks * renderBlock.length));
+    targetFill = targetBlocks * renderBlock.length;
+    blockNanos = (long) (1000000000.0 * blockSize / vst.getSampleRate());
+    
+    this.source = source;
+    if (source != null) {
+      AudioFormat sourceFormat = source.getFormat();
+      SampleFormat inputFormat = SampleFormat.fromAudioFormat(sourceFormat);
+      if (sourceFormat.getSampleRate() != AudioSystem.NOT_SPECIFIED && sourceFormat.getSampleRate() != vst.getSampleRate()) {
+        throw new IllegalArgumentException("The source must have the sample rate of the plugin: " + sourceFormat.getSampleRate() + " != " + vst.getSampleRate());
+      }
+      numSourceChannels = sourceFormat.getChannels();
+      if (inputRouting.length != fInputs.length) {
+        throw new IllegalArgumentException("The input routing must have one entry per plugin input: " + inputRouting.length + " != " + fInputs.length);
+      }
+      for (int channel : inputRouting) {
+        if (channel < -1 || channel >= numSourceChannels) {
+          throw new IllegalArgumentException("Routed source channels must be between 0 and " + numSourceChannels + ", or -1 for silence: " + channel);
+        }
+      }
+      this.inputRouting = inputRouting.clone();
+      inputConverter = new SampleConverter(inputFormat, sourceFormat.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, false);
+      bInput = new byte[numSourceChannels * blockSize * inputFormat.getBytesPerSample()];
+      captureBlock = new float[numSourceChannels * blockSize];
+      inputBlock = new float[numSourceChannels * blockSize];
+      inputRingBuffer = new FloatRingBuffer(Math.max(1, ringBlocks * inputBlock.length));
+    } else {
+      this.inputRouting = null;
+      numSourceChannels = 0;
+      inputConverter = null;
+      bInput = null;
+      captureBlock = null;
+      inputBlock = null;
+      inputRingBuffer = null;
     }
+    isSourceEnded = false;
+    
+    isStopped = false;
+    resetStatistics();
   }
   
   @Override
   protected void finalize() throws Throwable {
     try {
-      // close the sourceDataLine properly when this object is garbage collected
-      sourceDataLine.drain();
-      sourceDataLine.close();      
+      // close the sink and source properly when this object is garbage collected
+      sink.drain();
+      sink.close();
+      if (source != null) {
+        source.close();
+      }
     } finally {
       super.finalize();
     }
   }
 
   /**
-   * Converts a float audio array [-1,1] to an interleaved array of 16-bit samples
-   * in little-endian (low-byte, high-byte) format.
+   * Interleaves the routed plugin outputs. Outputs which are not routed to any device channel are never read.
+   */
+  private void interleave(float[][] fData, float[] interleaved) {
+    for (int j = 0; j < numAudioOutputs; j++) {
+      float[] channel = (outputRouting[j] < 0) ? silence : fData[outputRouting[j]];
+      for (int i = 0, index = j; i < blockSize; i++, index += numAudioOutputs) {
+        interleaved[index] = channel[i];
+      }
+    }
+  }
+  
+  /**
+   * Routes output i to device channel i, as the constructors without a routing always have.
+   */
+  private static int[] directOutputRouting(int numDeviceChannels) {
+    int[] routing = new int[numDeviceChannels];
+    for (int channel = 0; channel < numDeviceChannels; channel++) {
+      routing[channel] = channel;
+    }
+    return routing;
+  }
+  
+  /**
+   * Routes the outputs of the plugin to the given number of device channels, in order, for a multichannel
+   * device. Outputs which the
+   * plugin marks as the first in a stereo pair are kept together with the following output, starting on an
+   * even device channel, so that a multi-output synth's stereo busses land on the device's stereo pairs.
+   * Other outputs are routed as mono channels. Outputs which do not fit are not routed, and device
+   * channels left over are silent.
+   * @return  An array of plugin output indices, one per device channel, with -1 for silent channels.
    */
-  private byte[] floatsToBytes(float[][] fData, byte[] bData) {
-    int index = 0;
-    for (int i = 0; i < blockSize; i++) {
-      for (int j = 0; j < numAudioOutputs; j++) {
-        short sval = (short) (fData[j][i] * ShortMaxValueAsFloat);
-        bData[index++] = (byte) (sval & 0x00FF);
-        bData[index++] = (byte) ((sval & 0xFF00) >> 8);
+  public static int[] defaultOutputRouting(JVstHost2 vst, int numDeviceChannels) {
+    int[] routing = new int[numDeviceChannels];
+    Arrays.fill(routing, -1);
+    int numOutputs = vst.numOutputs();
+    int channel = 0;
+    for (int output = 0; output < numOutputs && channel < numDeviceChannels; output++) {
+      VstPinProperties properties = vst.getOutputProperties(output);
+      if (properties.isValid() && properties.isFirstInStereoPair() && output + 1 < numOutputs) {
+        channel += (channel % 2); // align the pair with a device pair
+        if (channel + 1 >= numDeviceChannels) {
+          break;
+        }
+        routing[channel++] = output++;
+        routing[channel++] = output;
+      } else {
+        routing[channel++] = output;
       }
     }
-    return bData;
+    return routing;
   }
   
+  /**
+   * Routes the channels of a source to the inputs of the plugin, in order. A mono source feeds every input.
+   * Inputs beyond the number of source channels are otherwise silent.
+   * @return  An array of source channel indices, one per plugin input, with -1 for silent inputs.
+   */
+  public static int[] defaultInputRouting(JVstHost2 vst, int numSourceChannels) {
+    int[] routing = new int[vst.numInputs()];
+    for (int input = 0; input < routing.length; input++) {
+      if (numSourceChannels == 1) {
+        routing[input] = 0;
+      } else {
+        routing[input] = (input < numSourceChannels) ? input : -1;
+      }
+    }
+    return routing;
+  }
+  
+  /**
+   * Deinterleaves the next input block into the plugin inputs, or silences them if the source has ended.
+   */
+  private void readInputBlock() {
+    if (inputRingBuffer.available() >= inputBlock.length) {
+      inputRingBuffer.read(inputBlock, 0, inputBlock.length);
+      LockSupport.unpark(readerThread); // in case it waits for room for a source which is not real-time
+      for (int i = 0; i < fInputs.length; i++) {
+        float[] input = fInputs[i];
+        int channel = inputRouting[i];
+        if (channel < 0) {
+          Arrays.fill(input, 0f);
+        } else {
+          for (int j = 0, index = channel; j < blockSize; j++, index += numSourceChannels) {
+            input[j] = inputBlock[index];
+          }
+        }
+      }
+    } else {
+      for (float[] input : fInputs) {
+        Arrays.fill(input, 0f);
+      }
+    }
+  }
+  
+  /**
+   * Returns the plugin output played on each device channel, with -1 for silent channels.
+   */
+  public int[] getOutputRouting() {
+    return outputRouting.clone();
+  }
+  
+  /**
+   * Renders blocks into the ring buffer until <code>stop</code> is called. The device writer thread
+   * is started and stopped by this method.
+   */
   public void run() {
-    while (true) {
-      vst.processReplacing(fInputs, fOutputs, blockSize);
-      sourceDataLine.write(floatsToBytes(fOutputs, bOutput), 0, bOutput.length);
+    renderThread = Thread.currentThread();
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        writeBlocks();
+      }
+    });
+    writer.setName(renderThread.getName() + " writer");
+    writer.setPriority(Thread.MAX_PRIORITY);
+    writerThread = writer;
+    writer.start();
+    Thread reader = null;
+    if (source != null) {
+      reader = new Thread(new Runnable() {
+        public void run() {
+          readBlocks();
+        }
+      });
+      reader.setName(renderThread.getName() + " reader");
+      reader.setPriority(Thread.MAX_PRIORITY);
+      readerThread = reader;
+      reader.start();
     }
+    initialDelay = vst.getInitialDelay();
+    
+    try {
+      while (!isStopped) {
+        boolean hasInput = (source == null) || isSourceEnded || inputRingBuffer.available() >= inputBlock.length;
+        if (hasInput && ringBuffer.available() + renderBlock.length <= targetFill) {
+          if (source != null) {
+            readInputBlock();
+          }
+          vst.processReplacing(fInputs, fOutputs, blockSize);
+          interleave(fOutputs, renderBlock);
+          ringBuffer.write(renderBlock, 0, renderBlock.length);
+          LockSupport.unpark(writerThread); // in case it waits for data for a sink which is not real-time
+          recordLatency();
+        } else {
+          // the writer unparks this thread whenever it takes a block, and the reader whenever it adds one
+          LockSupport.parkNanos(this, blockNanos);
+        }
+      }
+    } finally {
+      isStopped = true;
+      try {
+        writer.join();
+        if (reader != null) {
+          reader.join();
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      renderThread = null;
+    }
+  }
+  
+  /**
+   * Moves blocks from the source to the input ring buffer. The blocking read from a real-time source paces this thread.
+   */
+  private void readBlocks() {
+    boolean isRealtime = source.isRealtime();
+    try {
+      while (!isStopped) {
+        if (!isRealtime && inputRingBuffer.remaining() < captureBlock.length) {
+          LockSupport.parkNanos(this, blockNanos); // the renderer unparks this thread after each block
+          continue;
+        }
+        int numBytes = source.read(bInput, 0, bInput.length);
+        if (numBytes < 0) {
+          break;
+        }
+        int numSamples = inputConverter.convert(bInput, 0, numBytes, captureBlock, 0);
+        Arrays.fill(captureBlock, numSamples, captureBlock.length, 0f); // pad a short final read with silence
+        sourceBufferedFrames = source.getBufferedFrames();
+        if (inputRingBuffer.remaining() >= captureBlock.length) {
+          inputRingBuffer.write(captureBlock, 0, captureBlock.length);
+        } else {
+          inputOverrunCount++; // the renderer fell behind, so the captured block is dropped
+        }
+        LockSupport.unpark(renderThread);
+      }
+    } finally {
+      isSourceEnded = true;
+      LockSupport.unpark(renderThread);
+    }
+  }
+  
+  /**
+   * Estimates the latency of the block just rendered, from the capture of its first frame until that frame is
+   * played: the block itself and the frames buffered behind it by the source and the input ring buffer, the
+   * plugin's delay, and the frames ahead of it in the output ring buffer and the sink. The block has already been
+   * taken from the input ring buffer, so its frames are added on that side.
+   */
+  private void recordLatency() {
+    int frames = initialDelay + ringBuffer.available() / Math.max(1, numAudioOutputs) + sinkBufferedFrames;
+    if (source != null) {
+      frames += blockSize + sourceBufferedFrames + inputRingBuffer.available() / Math.max(1, numSourceChannels);
+    }
+    latencyFrames = frames;
+    if (frames > maxLatencyFrames) {
+      maxLatencyFrames = frames;
+    }
+  }
+  
+  /**
+   * Moves blocks from the ring buffer to the sink. The blocking write to a real-time sink paces this thread.
+   */
+  private void writeBlocks() {
+    boolean isRealtime = sink.isRealtime();
+    try {
+      // wait for the renderer to prefill the ring, so that starting does not count as an underrun
+      while (!isStopped && ringBuffer.available() < targetFill) {
+        LockSupport.parkNanos(this, blockNanos); // the renderer unparks this thread after each block
+      }
+      while (!isStopped) {
+        int fillFrames = ringBuffer.available() / Math.max(1, numAudioOutputs);
+        if (ringBuffer.available() >= outputBlock.length) {
+          recordFill(fillFrames);
+          ringBuffer.read(outputBlock, 0, outputBlock.length);
+          LockSupport.unpark(renderThread);
+        } else if (isRealtime) {
+          recordFill(fillFrames);
+          underrunCount++; // the renderer fell behind, so play silence rather than wait
+          Arrays.fill(outputBlock, 0f);
+        } else {
+          LockSupport.parkNanos(this, blockNanos); // the renderer unparks this thread after each block
+          continue;
+        }
+        if (sink.isStarved()) {
+          xrunCount++; // the device buffer ran dry before this write
+        }
+        sampleConverter.convert(outputBlock, 0, outputBlock.length, bOutput, 0);
+        sink.write(bOutput, 0, bOutput.length);
+        sinkBufferedFrames = sink.getBufferedFrames();
+      }
+    } finally {
+      sink.drain();
+    }
+  }
+  
+  private void recordFill(int fillFrames) {
+    if (fillFrames < minFillFrames) {
+      minFillFrames = fillFrames;
+    }
+    if (fillFrames > maxFillFrames) {
+      maxFillFrames = fillFrames;
+    }
+    totalFillFrames += fillFrames;
+    numFillMeasurements++;
+  }
+  
+  /**
+   * Stops rendering and output, and waits until the device writer has finished. The sink is drained
+   * but not closed. A stopped JVstAudioThread cannot be restarted.
+   */
+  public void stop() {
+    isStopped = true;
+    Thread render = renderThread;
+    LockSupport.unpark(render);
+    Thread writer = writerThread;
+    Thread reader = readerThread;
+    LockSupport.unpark(writer);
+    LockSupport.unpark(reader);
+    try {
+      if (writer != null && writer != Thread.currentThread()) {
+        writer.join();
+      }
+      if (reader != null && reader != Thread.currentThread()) {
+        reader.join();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+  
+  public boolean isStopped() {
+    return isStopped;
+  }
+  
+  /**
+   * Returns the number of blocks for which the ring buffer was empty, so that silence was written to the device.
+   */
+  public long getUnderrunCount() {
+    return underrunCount;
+  }
+  
+  /**
+   * Returns the number of times that the device buffer had run dry when a block was written to it.
+   */
+  public long getXrunCount() {
+    return xrunCount;
+  }
+  
+  /**
+   * Returns the number of captured blocks which were dropped because the input ring buffer was full.
+   */
+  public long getInputOverrunCount() {
+    return inputOverrunCount;
+  }
+  
+  /**
+   * Returns the estimated latency of the most recently rendered block in frames, from its capture by the source
+   * to its playback by the sink, including the plugin's initial delay. Without a source, this is the output latency.
+   */
+  public int getLatencyFrames() {
+    return latencyFrames;
+  }
+  
+  /**
+   * Returns the largest latency estimated for any block, in frames.
+   */
+  public int getMaxLatencyFrames() {
+    return maxLatencyFrames;
+  }
+  
+  /**
+   * Returns the estimated latency of the most recently rendered block, in milliseconds.
+   */
+  public double getLatencyMillis() {
+    return 1000.0 * latencyFrames / vst.getSampleRate();
+  }
+  
+  /**
+   * Returns the lowest fill level of the ring buffer seen by the device writer, in frames.
+   */
+  public int getMinFillFrames() {
+    return (numFillMeasurements == 0L) ? 0 : minFillFrames;
+  }
+  
+  /**
+   * Returns the highest fill level of the ring buffer seen by the device writer, in frames.
+   */
+  public int getMaxFillFrames() {
+    return maxFillFrames;
+  }
+  
+  /**
+   * Returns the mean fill level of the ring buffer seen by the device writer, in frames.
+   */
+  public double getMeanFillFrames() {
+    long n = numFillMeasurements;
+    return (n == 0L) ? 0.0 : (double) totalFillFrames / n;
+  }
+  
+  /**
+   * Returns the capacity of the ring buffer, in frames.
+   */
+  public int getRingCapacityFrames() {
+    return ringBuffer.getCapacity() / Math.max(1, numAudioOutputs);
+  }
+  
+  /**
+   * Clears all counters and fill level statistics. Measurements made concurrently by the writer may be lost.
+   */
+  public void resetStatistics() {
+    underrunCount = 0L;
+    xrunCount = 0L;
+    minFillFrames = Integer.MAX_VALUE;
+    maxFillFrames = 0;
+    totalFillFrames = 0L;
+    numFillMeasurements = 0L;
+    inputOverrunCount = 0L;
+    maxLatencyFrames = 0;
   }
-}
\ No newline at end of file
+}
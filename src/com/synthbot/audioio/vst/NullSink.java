@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An <code>AudioSink</code> which discards all data immediately, so that a <code>JVstAudioThread</code>
+ * renders as fast as it can. Useful for servers without a sound card, and for measuring throughput.
+ */
+public class NullSink implements AudioSink {
+  
+  private final AudioFormat format;
+  private volatile long numBytesWritten;
+  
+  public NullSink(AudioFormat format) {
+    if (format == null) {
+      throw new NullPointerException("The audio format is null.");
+    }
+    this.format = format;
+    numBytesWritten = 0L;
+  }
+  
+  public AudioFormat getFormat() {
+    return format;
+  }
+  
+  public boolean isRealtime() {
+    return false;
+  }
+  
+  public void write(byte[] data, int offset, int length) {
+    numBytesWritten += length;
+  }
+  
+  public boolean isStarved() {
+    return false;
+  }
+  
+  public int getBufferedFrames() {
+    return 0;
+  }
+  
+  public void drain() {
+    // nothing is buffered
+  }
+  
+  public void close() {
+    // nothing to release
+  }
+  
+  /**
+   * Returns the number of frames written to this sink.
+   */
+  public long getFramesWritten() {
+    return numBytesWritten / format.getFrameSize();
+  }
+}
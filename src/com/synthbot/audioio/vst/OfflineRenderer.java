@@ -0,0 +1,314 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import com.synthbot.audioplugin.vst.vst2.JVstHost2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * OfflineRenderer renders a MIDI <code>Sequence</code> through a plugin as fast as the processor allows,
+ * without involving an audio device. MIDI events are converted from ticks to sample times, following any
+ * tempo changes in the sequence, and are passed to the plugin at their exact sample offsets. The audio is
+ * returned as a float array, or streamed to a 16-bit WAV file. The plugin must be turned on.
+ * 
+ * An OfflineRenderer is not thread-safe. The plugin should not be processed by any other thread during rendering.
+ */
+public class OfflineRenderer {
+  
+  private static final int DEFAULT_MICROSECONDS_PER_QUARTER_NOTE = 500000; // 120 bpm
+  private static final int META_TEMPO = 0x51;
+  private static final int BLOCKS_PER_CHUNK = 16;
+  
+  private final JVstHost2 vst;
+  private final float sampleRate;
+  private final int numOutputs;
+  private final int chunkSize;
+  private final int midiQueueCapacity;
+  private final float[][] fInputs;
+  private final float[][] fOutputs;
+  
+  // the state of the current rendering
+  private MidiEvent[] events;
+  private long[] eventTimes;
+  private int nextEvent;
+  private long position;
+  private long numFrames;
+  
+  private long renderNanos;
+  private long renderedFrames;
+  
+  public OfflineRenderer(JVstHost2 vst) {
+    if (vst == null) {
+      throw new NullPointerException("The plugin may not be null.");
+    }
+    if (vst.getBlockSize() <= 0) {
+      throw new IllegalArgumentException("The block size of the plugin must be set before rendering: " + vst.getBlockSize());
+    }
+    this.vst = vst;
+    sampleRate = vst.getSampleRate();
+    numOutputs = vst.numOutputs();
+    chunkSize = BLOCKS_PER_CHUNK * vst.getBlockSize();
+    midiQueueCapacity = vst.getMidiQueueCapacity();
+    fInputs = new float[vst.numInputs()][chunkSize];
+    fOutputs = new float[numOutputs][chunkSize];
+  }
+  
+  /**
+   * Renders the given sequence into a new array, with one row for each output of the plugin.
+   * @param sequence  The MIDI sequence to render.
+   * @param tailSeconds  The number of seconds to continue rendering after the last event, so that notes may decay.
+   * @return  The rendered audio.
+   * @throws IllegalArgumentException  Thrown if the tail is negative, or if the rendering is too long to fit into an array.
+   */
+  public float[][] render(Sequence sequence, double tailSeconds) {
+    prepare(sequence, tailSeconds);
+    if (numFrames > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The rendering is too long to be returned as an array: " + numFrames + " frames. Render to a file instead.");
+    }
+    float[][] audio = new float[numOutputs][(int) numFrames];
+    long startNanos = System.nanoTime();
+    int frames;
+    while ((frames = renderChunk()) > 0) {
+      for (int i = 0; i < numOutputs; i++) {
+        System.arraycopy(fOutputs[i], 0, audio[i], (int) (position - frames), frames);
+      }
+    }
+    finish(startNanos);
+    return audio;
+  }
+  
+  /**
+   * Renders the given MIDI file into a new array.
+   * @see #render(Sequence, double)
+   */
+  public float[][] render(File midiFile, double tailSeconds) throws IOException, InvalidMidiDataException {
+    return render(MidiSystem.getSequence(midiFile), tailSeconds);
+  }
+  
+  /**
+   * Renders the given sequence into a 16-bit WAV file, with one channel for each output of the plugin.
+   * The audio is streamed to the file as it is rendered, so that renderings of any length may be written.
+   * Samples outside of [-1,1] are clipped.
+   * @param sequence  The MIDI sequence to render.
+   * @param tailSeconds  The number of seconds to continue rendering after the last event, so that notes may decay.
+   * @param wavFile  The file to write.
+   * @throws IOException  Thrown if the file cannot be written.
+   */
+  public void render(Sequence sequence, double tailSeconds, File wavFile) throws IOException {
+    prepare(sequence, tailSeconds);
+    AudioFormat audioFormat = new AudioFormat(sampleRate, 16, numOutputs, true, false);
+    AudioInputStream ais = new AudioInputStream(new RenderInputStream(), audioFormat, numFrames);
+    long startNanos = System.nanoTime();
+    AudioSystem.write(ais, AudioFileFormat.Type.WAVE, wavFile);
+    finish(startNanos);
+  }
+  
+  /**
+   * Renders the given MIDI file into a 16-bit WAV file.
+   * @see #render(Sequence, double, File)
+   */
+  public void render(File midiFile, double tailSeconds, File wavFile) throws IOException, InvalidMidiDataException {
+    render(MidiSystem.getSequence(midiFile), tailSeconds, wavFile);
+  }
+  
+  /**
+   * Returns the duration of the last rendering divided by the time taken to render it. A value of 10 means
+   * that the rendering completed ten times faster than it would have played in real time.
+   */
+  public double getRealtimeFactor() {
+    if (renderNanos <= 0L) {
+      return 0.0;
+    }
+    return (renderedFrames / (double) sampleRate) / (renderNanos / 1e9);
+  }
+  
+  /**
+   * Returns the number of sample frames produced by the last rendering.
+   */
+  public long getRenderedFrames() {
+    return renderedFrames;
+  }
+  
+  /**
+   * Collects the events of all tracks in time order and converts their ticks to sample times.
+   */
+  private void prepare(Sequence sequence, double tailSeconds) {
+    if (sequence == null) {
+      throw new NullPointerException("The sequence may not be null.");
+    }
+    if (tailSeconds < 0.0) {
+      throw new IllegalArgumentException("The tail length must be non-negative: " + tailSeconds);
+    }
+    List<MidiEvent> eventList = new ArrayList<MidiEvent>();
+    for (Track track : sequence.getTracks()) {
+      for (int i = 0; i < track.size(); i++) {
+        eventList.add(track.get(i));
+      }
+    }
+    // a stable sort, so that simultaneous events keep their order within each track
+    Collections.sort(eventList, new Comparator<MidiEvent>() {
+      public int compare(MidiEvent a, MidiEvent b) {
+        return (a.getTick() < b.getTick()) ? -1 : ((a.getTick() > b.getTick()) ? 1 : 0);
+      }
+    });
+    events = eventList.toArray(new MidiEvent[eventList.size()]);
+    eventTimes = new long[events.length];
+    
+    boolean isPpq = (sequence.getDivisionType() == Sequence.PPQ);
+    double resolution = sequence.getResolution();
+    double microsecondsPerQuarterNote = DEFAULT_MICROSECONDS_PER_QUARTER_NOTE;
+    long lastTick = 0L;
+    double lastSeconds = 0.0;
+    for (int i = 0; i < events.length; i++) {
+      long tick = events[i].getTick();
+      double seconds;
+      if (isPpq) {
+        seconds = lastSeconds + (tick - lastTick) * microsecondsPerQuarterNote / (resolution * 1e6);
+        lastTick = tick;
+        lastSeconds = seconds;
+        if (events[i].getMessage() instanceof MetaMessage) {
+          MetaMessage meta = (MetaMessage) events[i].getMessage();
+          byte[] data = meta.getData();
+          if (meta.getType() == META_TEMPO && data.length >= 3) {
+            microsecondsPerQuarterNote = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+          }
+        }
+      } else {
+        // SMPTE timing. The division type is the number of frames per second.
+        seconds = tick / (sequence.getDivisionType() * resolution);
+      }
+      eventTimes[i] = Math.round(seconds * sampleRate);
+    }
+    
+    long lastEventTime = (events.length > 0) ? eventTimes[events.length - 1] : 0L;
+    numFrames = lastEventTime + Math.round(tailSeconds * sampleRate);
+    nextEvent = 0;
+    position = 0L;
+  }
+  
+  /**
+   * Queues the events which fall within the next chunk, and renders it into <code>fOutputs</code>.
+   * A chunk is cut short if more events fall within it than the plugin can queue.
+   * @return  The number of frames rendered, or zero if the rendering is complete.
+   */
+  private int renderChunk() {
+    int frames = (int) Math.min(chunkSize, numFrames - position);
+    if (frames <= 0) {
+      return 0;
+    }
+    int numQueued = 0;
+    while (nextEvent < events.length && eventTimes[nextEvent] < position + frames) {
+      if (numQueued == midiQueueCapacity) {
+        frames = (int) Math.max(1L, eventTimes[nextEvent] - position);
+        break;
+      }
+      int offset = (int) Math.max(0L, eventTimes[nextEvent] - position);
+      if (events[nextEvent].getMessage() instanceof ShortMessage) {
+        vst.queueMidiMessage((ShortMessage) events[nextEvent].getMessage(), offset);
+        numQueued++;
+      } else if (events[nextEvent].getMessage() instanceof SysexMessage) {
+        vst.queueMidiMessage((SysexMessage) events[nextEvent].getMessage(), offset);
+        numQueued++;
+      } // meta messages are not passed to the plugin
+      nextEvent++;
+    }
+    vst.processLong(fInputs, fOutputs, frames);
+    position += frames;
+    return frames;
+  }
+  
+  private void finish(long startNanos) {
+    renderNanos = System.nanoTime() - startNanos;
+    renderedFrames = position;
+    events = null;
+    eventTimes = null;
+  }
+  
+  /**
+   * Renders chunks on demand, as the WAV writer reads them, and converts them to interleaved
+   * 16-bit little-endian samples.
+   */
+  private class RenderInputStream extends InputStream {
+    
+    private final SampleConverter sampleConverter = new SampleConverter(SampleFormat.PCM_16, ByteOrder.LITTLE_ENDIAN, false);
+    private final float[] interleaved = new float[chunkSize * numOutputs];
+    private final byte[] bOutput = new byte[chunkSize * numOutputs * 2];
+    private final byte[] singleByte = new byte[1];
+    private int readIndex = 0;
+    private int writeIndex = 0;
+    
+    @Override
+    public int read() throws IOException {
+      return (read(singleByte, 0, 1) < 0) ? -1 : (singleByte[0] & 0xFF);
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (readIndex == writeIndex) {
+        int frames = renderChunk();
+        if (frames == 0) {
+          return -1;
+        }
+        readIndex = 0;
+        writeIndex = floatsToBytes(frames);
+      }
+      int count = Math.min(len, writeIndex - readIndex);
+      System.arraycopy(bOutput, readIndex, b, off, count);
+      readIndex += count;
+      return count;
+    }
+    
+    /**
+     * @return  The number of bytes written to <code>bOutput</code>.
+     */
+    private int floatsToBytes(int frames) {
+      for (int j = 0; j < numOutputs; j++) {
+        float[] output = fOutputs[j];
+        for (int i = 0, index = j; i < frames; i++, index += numOutputs) {
+          interleaved[index] = output[i];
+        }
+      }
+      return sampleConverter.convert(interleaved, 0, frames * numOutputs, bOutput, 0);
+    }
+  }
+}
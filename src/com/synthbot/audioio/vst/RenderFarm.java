@@ -0,0 +1,250 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import com.synthbot.audioplugin.vst.JVstLoadException;
+import com.synthbot.audioplugin.vst.vst2.JVstHost2;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.Sequence;
+
+/**
+ * RenderFarm renders many jobs in parallel through several instances of the same plugin, normally one
+ * instance per processor core. A single plugin instance may only process one job at a time, so the
+ * instances are shared out among the jobs by a fixed executor with one thread per instance.
+ * Before each job the instance is turned off, restored to a known state (a bank chunk or a parameter
+ * vector), and turned on again, so that no job can hear the previous one.
+ * 
+ * The known state is taken from the first instance when the farm is created, and can be replaced
+ * with <code>setState</code>. Plugins should not be accessed directly while jobs are running.
+ */
+public class RenderFarm {
+  
+  /**
+   * A job which renders with an exclusive plugin instance.
+   */
+  public interface RenderTask<T> {
+    
+    /**
+     * Renders the job. The plugin has been reset to the known state of the farm, and is turned on.
+     * @param vst  The plugin instance, which is used by no other job until this method returns.
+     * @param renderer  An <code>OfflineRenderer</code> for the plugin instance.
+     * @return  The result of the job.
+     */
+    public T render(JVstHost2 vst, OfflineRenderer renderer) throws Exception;
+  }
+  
+  private final JVstHost2[] instances;
+  private final BlockingQueue<Integer> idleInstances;
+  private final OfflineRenderer[] renderers;
+  private final ExecutorService executor;
+  
+  private volatile byte[] bankChunk;
+  private volatile float[] parameters;
+  
+  /**
+   * Loads one instance of the plugin per available processor.
+   * @see #RenderFarm(File, float, int, int)
+   */
+  public RenderFarm(File pluginFile, float sampleRate, int blockSize) throws FileNotFoundException, JVstLoadException {
+    this(pluginFile, sampleRate, blockSize, Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * Loads the given number of instances of the plugin.
+   * @param pluginFile  The location of the native plugin library.
+   * @param sampleRate  The sample rate at which the instances should operate.
+   * @param blockSize  The maximum block size of the instances.
+   * @param numInstances  The number of instances, and therefore of jobs which may run at once.
+   * @throws FileNotFoundException  Thrown if the given VST File does not exist.
+   * @throws IllegalArgumentException  Thrown if the number of instances is not positive.
+   * @throws JVstLoadException  Thrown if there are any errors while loading the native VST.
+   */
+  public RenderFarm(File pluginFile, float sampleRate, int blockSize, int numInstances) throws FileNotFoundException, JVstLoadException {
+    if (numInstances <= 0) {
+      throw new IllegalArgumentException("The number of instances must be positive: " + numInstances);
+    }
+    instances = new JVstHost2[numInstances];
+    renderers = new OfflineRenderer[numInstances];
+    idleInstances = new ArrayBlockingQueue<Integer>(numInstances);
+    try {
+      for (int i = 0; i < numInstances; i++) {
+        instances[i] = JVstHost2.newInstance(pluginFile, sampleRate, blockSize);
+        renderers[i] = new OfflineRenderer(instances[i]);
+        idleInstances.add(i);
+      }
+    } catch (FileNotFoundException fnfe) {
+      unloadInstances();
+      throw fnfe;
+    } catch (JVstLoadException jvle) {
+      unloadInstances();
+      throw jvle;
+    }
+    captureState(instances[0]);
+    executor = Executors.newFixedThreadPool(numInstances, new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger(0);
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "RenderFarm worker " + threadCount.getAndIncrement());
+        thread.setDaemon(true); // an unused farm does not keep the VM alive
+        return thread;
+      }
+    });
+  }
+  
+  /**
+   * Takes the current state of the given plugin as the known state to which every instance is restored
+   * before each job. The state is taken as a bank chunk if the plugin supports it, and otherwise as the
+   * parameter vector of the current program.
+   */
+  public void captureState(JVstHost2 vst) {
+    if (vst.acceptsProgramsAsChunks()) {
+      setState(vst.getBankChunk());
+    } else {
+      float[] parameters = new float[vst.numParameters()];
+      vst.getParameters(parameters);
+      setState(parameters);
+    }
+  }
+  
+  /**
+   * Sets the bank chunk to which every instance is restored before each job.
+   */
+  public void setState(byte[] bankChunk) {
+    if (bankChunk == null) {
+      throw new NullPointerException("The bank chunk may not be null.");
+    }
+    this.bankChunk = bankChunk.clone();
+    this.parameters = null;
+  }
+  
+  /**
+   * Sets the parameter vector to which every instance is restored before each job.
+   */
+  public void setState(float[] parameters) {
+    if (parameters == null) {
+      throw new NullPointerException("The parameter vector may not be null.");
+    }
+    this.parameters = parameters.clone();
+    this.bankChunk = null;
+  }
+  
+  /**
+   * Submits a job to be rendered by the next free instance.
+   * @return  A <code>Future</code> holding the result of the job.
+   */
+  public <T> Future<T> submit(final RenderTask<T> task) {
+    if (task == null) {
+      throw new NullPointerException("The task may not be null.");
+    }
+    return executor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        // there are as many worker threads as instances, so an instance is always free and this never blocks
+        int index = idleInstances.take();
+        try {
+          JVstHost2 vst = instances[index];
+          resetInstance(vst);
+          return task.render(vst, renderers[index]);
+        } finally {
+          idleInstances.add(index);
+        }
+      }
+    });
+  }
+  
+  /**
+   * Submits the rendering of a MIDI sequence.
+   * @see OfflineRenderer#render(Sequence, double)
+   */
+  public Future<float[][]> submit(final Sequence sequence, final double tailSeconds) {
+    return submit(new RenderTask<float[][]>() {
+      public float[][] render(JVstHost2 vst, OfflineRenderer renderer) {
+        return renderer.render(sequence, tailSeconds);
+      }
+    });
+  }
+  
+  /**
+   * Submits the rendering of a MIDI sequence to a WAV file.
+   * @see OfflineRenderer#render(Sequence, double, File)
+   */
+  public Future<File> submit(final Sequence sequence, final double tailSeconds, final File wavFile) {
+    return submit(new RenderTask<File>() {
+      public File render(JVstHost2 vst, OfflineRenderer renderer) throws Exception {
+        renderer.render(sequence, tailSeconds, wavFile);
+        return wavFile;
+      }
+    });
+  }
+  
+  /**
+   * Returns the number of plugin instances, which is also the number of jobs which may run at once.
+   */
+  public int getNumInstances() {
+    return instances.length;
+  }
+  
+  /**
+   * Suspends the plugin, so that any tails and delay lines are cleared, discards any events left queued
+   * by the previous job, and restores the known state.
+   */
+  private void resetInstance(JVstHost2 vst) {
+    vst.turnOff();
+    vst.clearQueuedEvents();
+    byte[] bankChunk = this.bankChunk;
+    float[] parameters = this.parameters;
+    if (bankChunk != null) {
+      vst.setBankChunk(bankChunk);
+    } else if (parameters != null) {
+      vst.setParameters(parameters);
+    }
+    vst.turnOn();
+  }
+  
+  /**
+   * Waits for all submitted jobs to complete, and unloads all plugin instances.
+   * @throws InterruptedException  Thrown if the thread is interrupted while waiting.
+   */
+  public void shutdown() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    unloadInstances();
+  }
+  
+  private void unloadInstances() {
+    for (JVstHost2 vst : instances) {
+      if (vst != null && vst.isNativeComponentLoaded()) {
+        vst.turnOffAndUnloadPlugin();
+      }
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SampleConverter converts interleaved float samples in [-1,1] to bytes of a <code>SampleFormat</code>,
+ * and back.
+ * Samples are clipped to [-1,1] before conversion, so that out-of-range values saturate instead of
+ * wrapping around. Integer formats may optionally be dithered with triangular (TPDF) noise of one
+ * least significant bit.
+ * 
+ * Each sample is first scaled, cast and clipped in a simple loop over an int or short array, and the
+ * result is then stored with a single bulk <code>put</code>
+ * into a <code>ShortBuffer</code>, <code>IntBuffer</code> or <code>FloatBuffer</code> view of the
+ * destination. 24-bit samples have no buffer view, and are packed byte by byte.
+ * 
+ * A SampleConverter keeps scratch space and a dither generator, so it must only be used by one thread.
+ */
+public class SampleConverter {
+  
+  private final SampleFormat format;
+  private final ByteOrder byteOrder;
+  private final boolean isDithered;
+  private final float scale;
+  private final int maxValue; // the largest integer sample, and the negative of the smallest
+  private short[] shorts;
+  private int[] ints;
+  private float[] floats;
+  private byte[] wrappedArray; // the last destination, whose ByteBuffer is kept
+  private ByteBuffer wrappedBuffer;
+  private int seed; // xorshift state for the dither
+  
+  /**
+   * @param format  The output sample format.
+   * @param byteOrder  The byte order of the output samples.
+   * @param isDithered  True if TPDF dither should be added. Ignored for <code>FLOAT_32</code>.
+   */
+  public SampleConverter(SampleFormat format, ByteOrder byteOrder, boolean isDithered) {
+    if (format == null) {
+      throw new NullPointerException("The sample format is null.");
+    }
+    if (byteOrder == null) {
+      throw new NullPointerException("The byte order is null.");
+    }
+    this.format = format;
+    this.byteOrder = byteOrder;
+    this.isDithered = isDithered && format.isInteger();
+    switch (format) {
+      case PCM_16: maxValue = Short.MAX_VALUE; break;
+      case PCM_24: maxValue = 8388607; break;
+      case PCM_32: maxValue = Integer.MAX_VALUE; break;
+      default: maxValue = 1; break;
+    }
+    scale = maxValue;
+    shorts = new short[0];
+    ints = new int[0];
+    floats = new float[0];
+    seed = 0x2545F491;
+  }
+  
+  public SampleFormat getFormat() {
+    return format;
+  }
+  
+  public ByteOrder getByteOrder() {
+    return byteOrder;
+  }
+  
+  public boolean isDithered() {
+    return isDithered;
+  }
+  
+  /**
+   * Converts <code>length</code> samples starting at <code>offset</code> in <code>source</code>.
+   * @return  The number of bytes written to <code>destination</code>.
+   * @throws IndexOutOfBoundsException  Thrown if the destination is too short.
+   */
+  public int convert(float[] source, int offset, int length, byte[] destination, int destinationOffset) {
+    int numBytes = length * format.getBytesPerSample();
+    if (destinationOffset < 0 || destinationOffset + numBytes > destination.length) {
+      throw new IndexOutOfBoundsException("The destination cannot hold " + numBytes + " bytes from offset " + destinationOffset + ": " + destination.length);
+    }
+    ByteBuffer buffer = wrap(destination);
+    buffer.clear().position(destinationOffset);
+    switch (format) {
+      case PCM_16: {
+        buffer.asShortBuffer().put(toShorts(source, offset, length), 0, length);
+        break;
+      }
+      case PCM_24: {
+        int[] samples = toInts(source, offset, length);
+        if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
+          for (int i = 0, j = destinationOffset; i < length; i++, j += 3) {
+            int sample = samples[i];
+            destination[j] = (byte) sample;
+            destination[j + 1] = (byte) (sample >> 8);
+            destination[j + 2] = (byte) (sample >> 16);
+          }
+        } else {
+          for (int i = 0, j = destinationOffset; i < length; i++, j += 3) {
+            int sample = samples[i];
+            destination[j] = (byte) (sample >> 16);
+            destination[j + 1] = (byte) (sample >> 8);
+            destination[j + 2] = (byte) sample;
+          }
+        }
+        break;
+      }
+      case PCM_32: {
+        buffer.asIntBuffer().put(toInts(source, offset, length), 0, length);
+        break;
+      }
+      default: {
+        buffer.asFloatBuffer().put(toClippedFloats(source, offset, length), 0, length);
+        break;
+      }
+    }
+    return numBytes;
+  }
+  
+  /**
+   * Converts <code>length</code> bytes starting at <code>offset</code> in <code>source</code> to float samples
+   * in [-1,1]. Dither does not apply in this direction.
+   * @return  The number of samples written to <code>destination</code>.
+   * @throws IndexOutOfBoundsException  Thrown if the destination is too short.
+   */
+  public int convert(byte[] source, int offset, int length, float[] destination, int destinationOffset) {
+    int numSamples = length / format.getBytesPerSample();
+    if (destinationOffset < 0 || destinationOffset + numSamples > destination.length) {
+      throw new IndexOutOfBoundsException("The destination cannot hold " + numSamples + " samples from offset " + destinationOffset + ": " + destination.length);
+    }
+    ByteBuffer buffer = wrap(source);
+    buffer.clear().position(offset);
+    float inverseScale = 1f / scale;
+    switch (format) {
+      case PCM_16: {
+        if (shorts.length < numSamples) {
+          shorts = new short[numSamples];
+        }
+        short[] samples = shorts;
+        buffer.asShortBuffer().get(samples, 0, numSamples);
+        for (int i = 0; i < numSamples; i++) {
+          destination[destinationOffset + i] = samples[i] * inverseScale;
+        }
+        break;
+      }
+      case PCM_24: {
+        boolean isLittleEndian = (byteOrder == ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0, j = offset; i < numSamples; i++, j += 3) {
+          int sample = isLittleEndian
+              ? (source[j] & 0xFF) | ((source[j + 1] & 0xFF) << 8) | (source[j + 2] << 16)
+              : (source[j + 2] & 0xFF) | ((source[j + 1] & 0xFF) << 8) | (source[j] << 16);
+          destination[destinationOffset + i] = sample * inverseScale;
+        }
+        break;
+      }
+      case PCM_32: {
+        if (ints.length < numSamples) {
+          ints = new int[numSamples];
+        }
+        int[] samples = ints;
+        buffer.asIntBuffer().get(samples, 0, numSamples);
+        for (int i = 0; i < numSamples; i++) {
+          destination[destinationOffset + i] = samples[i] * inverseScale;
+        }
+        break;
+      }
+      default: {
+        buffer.asFloatBuffer().get(destination, destinationOffset, numSamples);
+        break;
+      }
+    }
+    return numSamples;
+  }
+  
+  /*
+   * Each format has its own small loop, with everything it touches in local variables, which the JIT compiler
+   * vectorises far more readily than one large loop. Clipping is done in the integer domain, which is much
+   * cheaper than clipping floats. The float to int cast saturates rather than wrapping, and maps NaN to zero,
+   * so every scaled sample can be clipped this way. Dithered samples are rounded to the nearest integer, as
+   * truncation towards zero would swallow dither of less than one LSB.
+   */
+  private short[] toShorts(float[] source, int offset, int length) {
+    if (shorts.length < length) {
+      shorts = new short[length];
+    }
+    short[] samples = shorts;
+    float scale = this.scale;
+    int max = maxValue;
+    if (isDithered) {
+      for (int i = 0; i < length; i++) {
+        samples[i] = (short) Math.max(-max, Math.min(max, Math.round(source[offset + i] * scale + nextDither())));
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        samples[i] = (short) Math.max(-max, Math.min(max, (int) (source[offset + i] * scale)));
+      }
+    }
+    return samples;
+  }
+  
+  private int[] toInts(float[] source, int offset, int length) {
+    if (ints.length < length) {
+      ints = new int[length];
+    }
+    int[] samples = ints;
+    float scale = this.scale;
+    int max = maxValue;
+    if (isDithered) {
+      for (int i = 0; i < length; i++) {
+        samples[i] = Math.max(-max, Math.min(max, Math.round(source[offset + i] * scale + nextDither())));
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        samples[i] = Math.max(-max, Math.min(max, (int) (source[offset + i] * scale)));
+      }
+    }
+    return samples;
+  }
+  
+  private float[] toClippedFloats(float[] source, int offset, int length) {
+    if (floats.length < length) {
+      floats = new float[length];
+    }
+    float[] samples = floats;
+    for (int i = 0; i < length; i++) {
+      float sample = source[offset + i];
+      sample = (sample > 1f) ? 1f : sample;
+      samples[i] = (sample < -1f) ? -1f : sample;
+    }
+    return samples;
+  }
+  
+  /**
+   * Returns triangular noise in (-1,1) LSB, the difference of two uniform random values.
+   */
+  private float nextDither() {
+    return nextUniform() - nextUniform();
+  }
+  
+  private float nextUniform() {
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return (seed >>> 8) * (1f / (1 << 24));
+  }
+  
+  private ByteBuffer wrap(byte[] destination) {
+    if (destination != wrappedArray) {
+      wrappedArray = destination;
+      wrappedBuffer = ByteBuffer.wrap(destination).order(byteOrder);
+    }
+    return wrappedBuffer;
+  }
+}
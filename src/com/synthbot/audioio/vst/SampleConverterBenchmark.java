@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import java.nio.ByteOrder;
+
+/**
+ * Measures the throughput of <code>SampleConverter</code> for each <code>SampleFormat</code>, against the
+ * scalar 16-bit loop which <code>JVstAudioThread</code> used before. Run it from the command line:
+ * java -cp JVstHost.jar com.synthbot.audioio.vst.SampleConverterBenchmark [numSamples] [numIterations]
+ */
+public class SampleConverterBenchmark {
+  
+  private static final float ShortMaxValueAsFloat = (float) Short.MAX_VALUE;
+  
+  /**
+   * The previous conversion loop, kept for comparison. It neither clips nor dithers.
+   */
+  private static byte[] floatsToBytes(float[] fData, byte[] bData) {
+    int index = 0;
+    for (int i = 0; i < fData.length; i++) {
+      short sval = (short) (fData[i] * ShortMaxValueAsFloat);
+      bData[index++] = (byte) (sval & 0x00FF);
+      bData[index++] = (byte) ((sval & 0xFF00) >> 8);
+    }
+    return bData;
+  }
+  
+  public static void main(String[] args) {
+    int numSamples = (args.length > 0) ? Integer.parseInt(args[0]) : 2 * 1024;
+    int numIterations = (args.length > 1) ? Integer.parseInt(args[1]) : 100000;
+    float[] samples = new float[numSamples];
+    for (int i = 0; i < numSamples; i++) {
+      samples[i] = (float) Math.sin(0.01 * i) * 1.1f; // includes out-of-range samples
+    }
+    byte[] bytes = new byte[4 * numSamples];
+    
+    // each measurement is repeated, so that the second run reflects compiled code
+    for (int run = 0; run < 2; run++) {
+      long startTime = System.nanoTime();
+      for (int i = 0; i < numIterations; i++) {
+        floatsToBytes(samples, bytes);
+      }
+      report("scalar PCM_16", startTime, numSamples, numIterations);
+      
+      for (SampleFormat format : SampleFormat.values()) {
+        for (boolean isDithered : new boolean[] {false, true}) {
+          if (isDithered && !format.isInteger()) {
+            continue;
+          }
+          SampleConverter converter = new SampleConverter(format, ByteOrder.LITTLE_ENDIAN, isDithered);
+          startTime = System.nanoTime();
+          for (int i = 0; i < numIterations; i++) {
+            converter.convert(samples, 0, numSamples, bytes, 0);
+          }
+          report(format + (isDithered ? " dithered" : ""), startTime, numSamples, numIterations);
+        }
+      }
+      System.out.println();
+    }
+  }
+  
+  private static void report(String name, long startTime, int numSamples, int numIterations) {
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    System.out.println(String.format("%-20s %8.1f Msamples/s", name, (double) numSamples * numIterations / seconds / 1e6));
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The interleaved sample formats to which audio may be converted for output.
+ */
+public enum SampleFormat {
+  
+  PCM_16(2, AudioFormat.Encoding.PCM_SIGNED),
+  PCM_24(3, AudioFormat.Encoding.PCM_SIGNED),
+  PCM_32(4, AudioFormat.Encoding.PCM_SIGNED),
+  FLOAT_32(4, AudioFormat.Encoding.PCM_FLOAT);
+  
+  private final int bytesPerSample;
+  private final AudioFormat.Encoding encoding;
+  
+  private SampleFormat(int bytesPerSample, AudioFormat.Encoding encoding) {
+    this.bytesPerSample = bytesPerSample;
+    this.encoding = encoding;
+  }
+  
+  public int getBytesPerSample() {
+    return bytesPerSample;
+  }
+  
+  public boolean isInteger() {
+    return encoding == AudioFormat.Encoding.PCM_SIGNED;
+  }
+  
+  /**
+   * Returns the sample format of the given <code>AudioFormat</code>.
+   * @throws IllegalArgumentException  Thrown if the format is not one of the supported sample formats.
+   */
+  public static SampleFormat fromAudioFormat(AudioFormat audioFormat) {
+    for (SampleFormat format : values()) {
+      if (format.encoding.equals(audioFormat.getEncoding()) && 8 * format.bytesPerSample == audioFormat.getSampleSizeInBits()) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported audio format: " + audioFormat);
+  }
+  
+  /**
+   * Returns the <code>AudioFormat</code> describing interleaved frames of this format.
+   */
+  public AudioFormat toAudioFormat(float sampleRate, int numChannels, boolean isBigEndian) {
+    return new AudioFormat(encoding, sampleRate, 8 * bytesPerSample, numChannels,
+        bytesPerSample * numChannels, sampleRate, isBigEndian);
+  }
+}
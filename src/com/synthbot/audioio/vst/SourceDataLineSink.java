@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * An <code>AudioSink</code> which plays through a sound output of the system.
+ */
+public class SourceDataLineSink implements AudioSink {
+  
+  private final SourceDataLine sourceDataLine;
+  
+  /**
+   * Opens and starts the default sound output for the given format.
+   * @param bufferSize  The size of the device buffer in bytes.
+   * @throws LineUnavailableException  Thrown if no sound output supports the format, or it cannot be opened.
+   */
+  public SourceDataLineSink(AudioFormat format, int bufferSize) throws LineUnavailableException {
+    DataLine.Info dataLineInfo = new DataLine.Info(SourceDataLine.class, format);
+    sourceDataLine = (SourceDataLine) AudioSystem.getLine(dataLineInfo);
+    sourceDataLine.open(format, bufferSize);
+    sourceDataLine.start();
+  }
+  
+  public AudioFormat getFormat() {
+    return sourceDataLine.getFormat();
+  }
+  
+  public boolean isRealtime() {
+    return true;
+  }
+  
+  public void write(byte[] data, int offset, int length) {
+    sourceDataLine.write(data, offset, length);
+  }
+  
+  public boolean isStarved() {
+    return sourceDataLine.available() >= sourceDataLine.getBufferSize();
+  }
+  
+  public int getBufferedFrames() {
+    return (sourceDataLine.getBufferSize() - sourceDataLine.available()) / sourceDataLine.getFormat().getFrameSize();
+  }
+  
+  public void drain() {
+    sourceDataLine.drain();
+  }
+  
+  public void close() {
+    sourceDataLine.close();
+  }
+}
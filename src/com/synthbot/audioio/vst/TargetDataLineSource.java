@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioio.vst;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * An <code>AudioSource</code> which captures from a sound input of the system.
+ */
+public class TargetDataLineSource implements AudioSource {
+  
+  private final TargetDataLine targetDataLine;
+  
+  /**
+   * Opens and starts the default sound input for the given format.
+   * @param bufferSize  The size of the device buffer in bytes.
+   * @throws LineUnavailableException  Thrown if no sound input supports the format, or it cannot be opened.
+   */
+  public TargetDataLineSource(AudioFormat format, int bufferSize) throws LineUnavailableException {
+    DataLine.Info dataLineInfo = new DataLine.Info(TargetDataLine.class, format);
+    targetDataLine = (TargetDataLine) AudioSystem.getLine(dataLineInfo);
+    targetDataLine.open(format, bufferSize);
+    targetDataLine.start();
+  }
+  
+  public AudioFormat getFormat() {
+    return targetDataLine.getFormat();
+  }
+  
+  public boolean isRealtime() {
+    return true;
+  }
+  
+  public int read(byte[] data, int offset, int length) {
+    return targetDataLine.read(data, offset, length);
+  }
+  
+  public int getBufferedFrames() {
+    return targetDataLine.available() / targetDataLine.getFormat().getFrameSize();
+  }
+  
+  public void close() {
+    targetDataLine.stop();
+    targetDataLine.close();
+  }
+}
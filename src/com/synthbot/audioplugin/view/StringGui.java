@@ -22,6 +22,7 @@
 package com.synthbot.audioplugin.view;
 
 import com.synthbot.audioplugin.vst.vst2.JVstHost2;
+import com.synthbot.audioplugin.vst.vst2.ParameterDescriptor;
 
 import java.awt.Container;
 import java.awt.Dimension;
@@ -95,10 +96,13 @@ public class StringGui extends JFrame {
     JScrollBar verticalScrollBar = scrollPane.getVerticalScrollBar();
     verticalScrollBar.setUnitIncrement(colHeight);
         
+    ParameterDescriptor[] descriptors = vst.getParameterDescriptors();
+    float[] parameters = new float[numParameters];
+    vst.getParameters(parameters);
     for (int i = 0; i < numParameters; i++) {
       // parameter names e.g. 'LFO speed'
       // parameter 'units', e.g. 'seconds', 'Hz'
-      JLabel nameLabel = new JLabel(i + ": " + vst.getParameterName(i) + "  (" + vst.getParameterLabel(i) + ")  ", JLabel.RIGHT);
+      JLabel nameLabel = new JLabel(i + ": " + descriptors[i].getName() + "  (" + descriptors[i].getLabel() + ")  ", JLabel.RIGHT);
       
       final JSlider slider = new JSlider(0, 127) {
         private static final long serialVersionUID = 0L;
@@ -113,7 +117,7 @@ public class StringGui extends JFrame {
           this.sliderModel.setValue(newValue);
         }
       };
-      slider.setValue((int) (vst.getParameter(i) * 127f));
+      slider.setValue((int) (parameters[i] * 127f));
       slider.setFocusable(false);
       sliders[i] = slider;
       
@@ -233,8 +237,10 @@ public class StringGui extends JFrame {
           vst.setProgram(index);
           
           // now update the sliders...
+          float[] parameters = new float[numParameters];
+          vst.getParameters(parameters);
           for (int i = 0; i < numParameters; i++) {
-            sliders[i].setValue((int) (vst.getParameter(i) * 127f));
+            sliders[i].setValue((int) (parameters[i] * 127f));
           }
         }
       });
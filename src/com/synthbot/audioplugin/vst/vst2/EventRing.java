@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring of pre-allocated slots. Any number of threads may claim and publish
+ * slots concurrently, while a single consumer (the thread processing audio) polls and releases them.
+ * Subclasses keep the slot contents in parallel arrays indexed by the slot number, so that neither
+ * producers nor the consumer allocate. A producer which finds the ring full is never blocked; the
+ * attempt is rejected and counted as an overflow.
+ * 
+ * The sequencing follows Dmitry Vyukov's bounded MPMC queue. Each slot carries a sequence number
+ * which tells producers and the consumer whether the slot is free, written, or not yet read.
+ */
+abstract class EventRing {
+  
+  protected final int capacity;
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final AtomicLong enqueuePosition;
+  private final AtomicLong dequeuePosition;
+  private final AtomicLong overflowCount;
+  
+  /**
+   * @param minimumCapacity  The ring holds at least this many slots. The capacity is rounded up to a power of two.
+   * @throws IllegalArgumentException  Thrown if the capacity is not positive.
+   */
+  protected EventRing(int minimumCapacity) {
+    if (minimumCapacity <= 0 || minimumCapacity > (1 << 30)) {
+      throw new IllegalArgumentException("The capacity must be in (0, 2^30]: " + minimumCapacity);
+    }
+    int powerOfTwo = 1;
+    while (powerOfTwo < minimumCapacity) {
+      powerOfTwo <<= 1;
+    }
+    capacity = powerOfTwo;
+    mask = capacity - 1;
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    enqueuePosition = new AtomicLong(0L);
+    dequeuePosition = new AtomicLong(0L);
+    overflowCount = new AtomicLong(0L);
+  }
+  
+  /**
+   * Claims a free slot for writing. The slot must be written and then passed to <code>publish</code>.
+   * @return  The claimed position, or -1 if the ring is full.
+   */
+  protected final long claim() {
+    long position = enqueuePosition.get();
+    while (true) {
+      long difference = sequences.get((int) position & mask) - position;
+      if (difference == 0L) {
+        if (enqueuePosition.compareAndSet(position, position + 1L)) {
+          return position;
+        }
+        position = enqueuePosition.get();
+      } else if (difference < 0L) {
+        overflowCount.incrementAndGet();
+        return -1L;
+      } else {
+        position = enqueuePosition.get();
+      }
+    }
+  }
+  
+  /**
+   * Makes a claimed and written slot visible to the consumer.
+   */
+  protected final void publish(long position) {
+    sequences.set((int) position & mask, position + 1L);
+  }
+  
+  /**
+   * Takes the next published slot. Must only be called by the consumer. The slot must be read and
+   * then passed to <code>release</code>.
+   * @return  The position of the next slot, or -1 if the ring is empty.
+   */
+  protected final long poll() {
+    long position = dequeuePosition.get();
+    if (sequences.get((int) position & mask) != position + 1L) {
+      return -1L;
+    }
+    dequeuePosition.lazySet(position + 1L);
+    return position;
+  }
+  
+  /**
+   * Returns a read slot to the producers.
+   */
+  protected final void release(long position) {
+    sequences.set((int) position & mask, position + capacity);
+  }
+  
+  /**
+   * Converts a claimed or polled position into an index into the slot arrays.
+   */
+  protected final int slotIndex(long position) {
+    return (int) position & mask;
+  }
+  
+  /**
+   * Returns the number of slots in this ring.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+  
+  /**
+   * Returns an estimate of the number of published or claimed slots which have not yet been polled.
+   */
+  public int size() {
+    long size = enqueuePosition.get() - dequeuePosition.get();
+    return (int) Math.max(0L, Math.min(size, capacity));
+  }
+  
+  /**
+   * Returns the number of times that a producer found the ring full.
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
+}
@@ -38,18 +38,27 @@
 #define JNI_VERSION JNI_VERSION_1_4
 
 #define PPQ 96.0
+#define EVENT_STRIDE com_synthbot_audioplugin_vst_vst2_JVstHost20_MIDI_EVENT_STRIDE
+#define PARAMETER_QUEUE_CAPACITY com_synthbot_audioplugin_vst_vst2_JVstHost20_PARAMETER_QUEUE_CAPACITY
 #define WINDOWS_EDITOR_CLASSNAME "JVstHost Native Editor"
 
 // GLOBAL VARIABLES
 JavaVM *jvm;
 jclass vpwClass;
-jclass midiMessageClass;
 jmethodID vpwAudioMasterProcessMidiEvents;
 jmethodID vpwAudioMasterIoChanged;
 jmethodID vpwAudioMasterAutomate;
 jmethodID vpwAudioMasterBeginEdit;
 jmethodID vpwAudioMasterEndEdit;
-jmethodID mmGetMessage;
+jfieldID vpwProcessLock;
+
+/**
+ * Events are kept in a pool of equally sized elements, large enough for either kind of midi event.
+ */
+typedef union hostMidiEvent {
+  VstMidiEvent midi;
+  VstMidiSysexEvent sysex;
+};
 
 /**
  * A struct to hold locally cached variables for the host
@@ -61,6 +70,15 @@ typedef struct hostLocalVars {
   double **dInputs;
   double **dOutputs;
   VstTimeInfo *vti;
+  VstEvents *vstes; // the events most recently sent to the plugin, pointing into eventPool
+  hostMidiEvent *eventPool;
+  jint *packedEvents; // a copy of the packed java events, with room for eventPoolCapacity events
+  int eventPoolCapacity;
+  char *sysexPool;
+  int sysexPoolCapacity;
+  jint *parameterIndices; // batches of parameter changes are copied here from java
+  jfloat *parameterValues;
+  int parameterPoolCapacity;
   void *libPtr;
   double sampleRate; // cache the current sampleRate and blockSize, so that the java object doesn't have to be asked for it every time an audioMaster callback is made (such as for VstTimeInfo pointers).
   int blockSize;
@@ -70,6 +88,15 @@ typedef struct hostLocalVars {
   int timeSigDenominator;
 };
 
+/**
+ * Reports the version of the java/native interface which this library implements.
+ * See JVstHost2.NATIVE_INTERFACE_VERSION.
+ */
+JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost2_getNativeInterfaceVersion
+  (JNIEnv *env, jclass jclazz) {
+  return com_synthbot_audioplugin_vst_vst2_JVstHost2_NATIVE_INTERFACE_VERSION;
+}
+
 /**
  * Can be extended in the future if we find that resvd1 is being overwritten by some plugins.
  */
@@ -108,6 +135,57 @@ void freeHostLocalArrays(AEffect *effect) {
   }
 }
 
+/**
+ * Ensures that the event pool can hold numEvents events and sysexLength bytes of sysex data.
+ * The pool only grows, so that once it has reached the size of the largest block of events,
+ * sending events no longer allocates.
+ */
+void ensureEventPoolCapacity(hostLocalVars *hostVars, int numEvents, int sysexLength) {
+  if (numEvents > hostVars->eventPoolCapacity) {
+    free(hostVars->vstes);
+    free(hostVars->eventPool);
+    free(hostVars->packedEvents);
+    int capacity = (numEvents > 2 * hostVars->eventPoolCapacity) ? numEvents : 2 * hostVars->eventPoolCapacity;
+    hostVars->vstes = (VstEvents *) malloc(sizeof(VstEvents) + capacity*sizeof(VstEvent *));
+    hostVars->eventPool = (hostMidiEvent *) malloc(sizeof(hostMidiEvent) * capacity);
+    hostVars->packedEvents = (jint *) malloc(sizeof(jint) * EVENT_STRIDE * capacity);
+    hostVars->eventPoolCapacity = capacity;
+  }
+  if (sysexLength > hostVars->sysexPoolCapacity) {
+    free(hostVars->sysexPool);
+    int capacity = (sysexLength > 2 * hostVars->sysexPoolCapacity) ? sysexLength : 2 * hostVars->sysexPoolCapacity;
+    hostVars->sysexPool = (char *) malloc(capacity);
+    hostVars->sysexPoolCapacity = capacity;
+  }
+}
+
+void freeEventPool(hostLocalVars *hostVars) {
+  free(hostVars->vstes);
+  free(hostVars->eventPool);
+  free(hostVars->packedEvents);
+  free(hostVars->sysexPool);
+  hostVars->vstes = NULL;
+  hostVars->eventPool = NULL;
+  hostVars->packedEvents = NULL;
+  hostVars->sysexPool = NULL;
+  hostVars->eventPoolCapacity = 0;
+  hostVars->sysexPoolCapacity = 0;
+}
+
+/**
+ * Ensures that the parameter pool can hold a batch of numParameters changes. The pool is sized when the plugin
+ * is loaded, and only grows if the plugin later reports more parameters, so that the audio thread does not allocate.
+ */
+void ensureParameterPoolCapacity(hostLocalVars *hostVars, int numParameters) {
+  if (numParameters > hostVars->parameterPoolCapacity) {
+    free(hostVars->parameterIndices);
+    free(hostVars->parameterValues);
+    hostVars->parameterIndices = (jint *) malloc(sizeof(jint) * numParameters);
+    hostVars->parameterValues = (jfloat *) malloc(sizeof(jfloat) * numParameters);
+    hostVars->parameterPoolCapacity = numParameters;
+  }
+}
+
 jobject getCachedCallingObject(AEffect *effect) {
   if (isHostLocalVarsValid(effect)) {
     return ((hostLocalVars *) effect->resvd1)->jVstHost2;
@@ -268,16 +346,13 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *ur_jvm, void *reserved) {
   
   jclass javaClass = env->FindClass("com/synthbot/audioplugin/vst/vst2/JVstHost2");
   vpwClass = (jclass) env->NewWeakGlobalRef(javaClass);
-  
-  javaClass = env->FindClass("javax/sound/midi/MidiMessage");
-  midiMessageClass = (jclass) env->NewWeakGlobalRef(javaClass);
 
   vpwAudioMasterProcessMidiEvents = env->GetMethodID(vpwClass, "audioMasterProcessMidiEvents", "(IIII)V");
   vpwAudioMasterIoChanged = env->GetMethodID(vpwClass, "audioMasterIoChanged", "(IIII)V");
   vpwAudioMasterAutomate = env->GetMethodID(vpwClass, "audioMasterAutomate", "(IF)V");
   vpwAudioMasterBeginEdit = env->GetMethodID(vpwClass, "audioMasterBeginEdit", "(I)V");
   vpwAudioMasterEndEdit = env->GetMethodID(vpwClass, "audioMasterEndEdit", "(I)V");
-  mmGetMessage = env->GetMethodID(midiMessageClass, "getMessage", "()[B");
+  vpwProcessLock = env->GetFieldID(vpwClass, "processLock", "Ljava/lang/Object;");
   
   #if _WIN32
     WNDCLASS wndclass;
@@ -302,7 +377,6 @@ JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *jvm, void *reserved) {
   JNIEnv *env;
   jvm->GetEnv((void **)&env, JNI_VERSION);
   env->DeleteWeakGlobalRef(vpwClass);
-  env->DeleteWeakGlobalRef(midiMessageClass);
 }
 
 void opcode2string(VstInt32 opcode, VstIntPtr value, JNIEnv *env) {
@@ -622,7 +696,9 @@ VstIntPtr VSTCALLBACK HostCallback (AEffect *effect, VstInt32 opcode, VstInt32 i
       if (jobj == NULL) {
         return 0;
       } else {
-        env->MonitorEnter(jobj);
+        // the host arrays are only used while processing, so they are guarded by the process lock, not by the JVstHost2 monitor
+        jobject processLock = env->GetObjectField(jobj, vpwProcessLock);
+        env->MonitorEnter(processLock);
   
         freeHostLocalArrays(effect);
         initHostLocalArrays(effect); // reinitialise the arrays with the new numInputs and numOutputs
@@ -635,7 +711,8 @@ VstIntPtr VSTCALLBACK HostCallback (AEffect *effect, VstInt32 opcode, VstInt32 i
             effect->initialDelay,
             effect->numParams);
   
-        env->MonitorExit(jobj);
+        env->MonitorExit(processLock);
+        env->DeleteLocalRef(processLock);
         return 1;
       }
     }
@@ -968,6 +1045,17 @@ JNIEXPORT jlong JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost2_loadPlu
   ((hostLocalVars *) ae->resvd1)->jVstHost2 = NULL;
   initHostLocalArrays(ae);
   ((hostLocalVars *) ae->resvd1)->vti = (VstTimeInfo *) malloc(sizeof(VstTimeInfo));
+  ((hostLocalVars *) ae->resvd1)->vstes = NULL;
+  ((hostLocalVars *) ae->resvd1)->eventPool = NULL;
+  ((hostLocalVars *) ae->resvd1)->packedEvents = NULL;
+  ((hostLocalVars *) ae->resvd1)->eventPoolCapacity = 0;
+  ((hostLocalVars *) ae->resvd1)->sysexPool = NULL;
+  ((hostLocalVars *) ae->resvd1)->sysexPoolCapacity = 0;
+  ((hostLocalVars *) ae->resvd1)->parameterIndices = NULL;
+  ((hostLocalVars *) ae->resvd1)->parameterValues = NULL;
+  ((hostLocalVars *) ae->resvd1)->parameterPoolCapacity = 0;
+  ensureParameterPoolCapacity((hostLocalVars *) ae->resvd1,
+      (ae->numParams > PARAMETER_QUEUE_CAPACITY) ? ae->numParams : PARAMETER_QUEUE_CAPACITY);
   ((hostLocalVars *) ae->resvd1)->libPtr = libptr;
   ((hostLocalVars *) ae->resvd1)->sampleRate = 0.0;
   ((hostLocalVars *) ae->resvd1)->blockSize = 0;
@@ -995,6 +1083,9 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost2_unloadPl
       if (hostVars->vti != 0) {
         free(hostVars->vti);
       }
+      freeEventPool(hostVars);
+      free(hostVars->parameterIndices);
+      free(hostVars->parameterValues);
       free(hostVars);
       effect->resvd1 = NULL;
       
@@ -1167,100 +1258,79 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_closeEd
 }
 
 /**
- * Sends the midi messages to the vst via effProcessEvents, and returns
- * a pointer to the VstEvents struct. This should be freed /after/ the
- * corresponding call to processX.
+ * Unpacks a block of events, in the format described by MidiEventQueue, into the event pool and
+ * sends them to the vst via effProcessEvents. Each java array is copied once into the pool, and no java methods
+ * are called. No critical region is held, as the pool may have to grow while the events are unpacked.
+ * The plugin may refer to the events until the following call to processX has returned. The pool is
+ * therefore only reused when the next block of events is sent.
  */
-VstEvents *setMidiEvents(JNIEnv *env, jobjectArray midiMessages, AEffect* effect) {
-
-  // set up the vst events data structures
-  int numMessages = (midiMessages == NULL) ? 0 : env->GetArrayLength(midiMessages);
-  jobject midiMessage;
-  VstEvents *vstes;
-  if (numMessages <= 2) {
-    vstes = (VstEvents *) malloc(sizeof(VstEvents));
-  } else {
-    vstes = (VstEvents *) malloc(sizeof(VstEvents) + (numMessages-2)*sizeof(VstEvent *));
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processEvents
+  (JNIEnv *env, jclass jclazz, jintArray jevents, jint numEvents, jbyteArray jsysex, jlong ae) {
+  
+  AEffect *effect = (AEffect *)ae;
+  hostLocalVars *hostVars = (hostLocalVars *) effect->resvd1;
+  
+  ensureEventPoolCapacity(hostVars, numEvents, 0);
+  jint *events = hostVars->packedEvents;
+  env->GetIntArrayRegion(jevents, 0, numEvents * EVENT_STRIDE, events);
+  int sysexLength = 0;
+  for (int i = 0; i < numEvents; i++) {
+    sysexLength += events[i * EVENT_STRIDE + 2];
   }
-  vstes->numEvents = numMessages;
-  vstes->reserved = NULL;
-  VstEvent *vste;
-  VstMidiEvent *vstme;
-  VstMidiSysexEvent *vstmse;
-  jbyteArray jmessageArray;
-  unsigned char *messageArray;
-  int messageArrayLength;
-  for(int i = 0; i < numMessages; i++) {
-    midiMessage = env->GetObjectArrayElement(midiMessages, i);
-    jmessageArray = (jbyteArray) env->CallObjectMethod(midiMessage, mmGetMessage);
-    messageArrayLength = env->GetArrayLength(jmessageArray);
-    messageArray = (unsigned char *) env->GetPrimitiveArrayCritical(jmessageArray, NULL);
-    
-    vste = (VstEvent *) malloc(sizeof(VstEvent));
-
-    if (messageArray[0] == 0xF0) { // status byte == the System Exclusive flag
-      vstmse = (VstMidiSysexEvent *) vste;
+  ensureEventPoolCapacity(hostVars, numEvents, sysexLength);
+  if (sysexLength > 0) {
+    env->GetByteArrayRegion(jsysex, 0, sysexLength, (jbyte *) hostVars->sysexPool);
+  }
+  
+  VstEvents *vstes = hostVars->vstes;
+  vstes->numEvents = numEvents;
+  vstes->reserved = 0;
+  char *sysexDump = hostVars->sysexPool;
+  for (int i = 0; i < numEvents; i++) {
+    jint packed = events[i * EVENT_STRIDE];
+    jint deltaFrames = events[i * EVENT_STRIDE + 1];
+    jint dumpBytes = events[i * EVENT_STRIDE + 2];
+    hostMidiEvent *hme = &(hostVars->eventPool[i]);
+    if ((packed & 0xFF) == 0xF0) { // status byte == the System Exclusive flag
+      VstMidiSysexEvent *vstmse = &(hme->sysex);
       vstmse->type = kVstSysExType;
       vstmse->byteSize = sizeof(VstMidiSysexEvent);
-      vstmse->deltaFrames = 0;
+      vstmse->deltaFrames = (VstInt32) deltaFrames;
       vstmse->flags = 0;
-      vstmse->dumpBytes = (VstInt32) (messageArrayLength - 1);
-      vstmse->resvd1 = (VstIntPtr) jmessageArray;
-      vstmse->sysexDump = (char *) (messageArray+1); // the first byte of messageArray is the status byte, which we already recorded
+      vstmse->dumpBytes = (VstInt32) dumpBytes;
+      vstmse->resvd1 = 0;
+      vstmse->sysexDump = sysexDump;
       vstmse->resvd2 = 0;
-    } else {      
-      vstme = (VstMidiEvent *) vste;
+      sysexDump += dumpBytes;
+    } else {
+      VstMidiEvent *vstme = &(hme->midi);
       vstme->type = kVstMidiType;             //< #kVstMidiType
       vstme->byteSize = sizeof(VstMidiEvent); //< sizeof (VstMidiEvent)
-      vstme->deltaFrames = 0;                 //< sample frames related to the current block start sample position
+      vstme->deltaFrames = (VstInt32) deltaFrames; //< sample frames related to the current block start sample position
       vstme->flags = 0;                       //< @see VstMidiEventFlags
       vstme->noteLength = 0;                  //< (in sample frames) of entire note, if available, else 0
       vstme->noteOffset = 0;                  //< offset (in sample frames) into note from note start if available, else 0
-      memset(vstme->midiData, 0, 4);          // clear the midiData array (4 bytes)
-      memcpy(vstme->midiData, messageArray, messageArrayLength); // set the midiData array
+      vstme->midiData[0] = (char) (packed & 0xFF);
+      vstme->midiData[1] = (char) ((packed >> 8) & 0xFF);
+      vstme->midiData[2] = (char) ((packed >> 16) & 0xFF);
+      vstme->midiData[3] = 0;
       vstme->detune = 0;                      //< -64 to +63 cents; for scales other than 'well-tempered' ('microtuning')
       vstme->noteOffVelocity = 0;             //< Note Off Velocity [0, 127]
       vstme->reserved1 = 0;                   //< zero (Reserved for future use)
       vstme->reserved2 = 0;                   //< zero (Reserved for future use)
-      env->ReleasePrimitiveArrayCritical(jmessageArray, messageArray, JNI_ABORT);
     }
-    
-    vstes->events[i] = vste;
+    vstes->events[i] = (VstEvent *) hme;
   }
   
   // send the events to the vst
   effect->dispatcher (effect, effProcessEvents, 0, 0, vstes, 0);
-  
-  return vstes;
-}
-
-/**
- * Frees a VstEvents struct.
- */
-void freeMidiEvents(VstEvents *vstes, JNIEnv *env) {
-  VstMidiSysexEvent *vstmse;
-  for(int i = 0; i < vstes->numEvents; i++) {
-    if (vstes->events[i]->type == kVstSysExType) {
-      vstmse = (VstMidiSysexEvent *) vstes->events[i];
-      /*
-       * sysexDump-1 to account for the fact that the message array starts with the status byte,
-       * which had been previously accounted for. sysexDump was assigned to the first "message"
-       * part of the messageArray. 
-       */
-      env->ReleasePrimitiveArrayCritical((jbyteArray) vstmse->resvd1, vstmse->sysexDump-1, JNI_ABORT);
-    }
-    free(vstes->events[i]);
-  }
-  free(vstes);
 }
 
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processReplacing
-  (JNIEnv *env, jclass jclazz, jobjectArray messages, jobjectArray jinputs, jobjectArray joutputs, jint sampleFrames, jlong ae) {
+  (JNIEnv *env, jclass jclazz, jobjectArray jinputs, jobjectArray joutputs, jint offset, jint sampleFrames, jlong ae) {
   
   AEffect *effect = (AEffect *)ae;
   
-  VstEvents *vstes = setMidiEvents(env, messages, effect);
-  
   float **cinputs = ((hostLocalVars *) effect->resvd1)->fInputs;
   float **coutputs = ((hostLocalVars *) effect->resvd1)->fOutputs;
   for(int i = 0; i < effect->numInputs; i++) {
@@ -1286,7 +1356,20 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
     }
   }
 
+  // the block may start part way into the arrays, if it has been split. The pointers are restored before they are released.
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] += offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] += offset;
+  }
   effect->processReplacing(effect, cinputs, coutputs, (int) sampleFrames);
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] -= offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] -= offset;
+  }
 
   for(int i = 0; i < effect->numInputs; i++) {
     env->ReleasePrimitiveArrayCritical(
@@ -1300,17 +1383,13 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
         coutputs[i],
         0);
   }
-
-  freeMidiEvents(vstes, env);
 }
 
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_processDoubleReplacing
-  (JNIEnv *env, jclass jclazz, jobjectArray messages, jobjectArray jinputs, jobjectArray joutputs, jint sampleFrames, jlong ae) {
+  (JNIEnv *env, jclass jclazz, jobjectArray jinputs, jobjectArray joutputs, jint offset, jint sampleFrames, jlong ae) {
   
   AEffect *effect = (AEffect *)ae;
   
-  VstEvents *vstes = setMidiEvents(env, messages, effect);
-  
   double **cinputs = ((hostLocalVars *) effect->resvd1)->dInputs;
   double **coutputs = ((hostLocalVars *) effect->resvd1)->dOutputs;
   for(int i = 0; i < effect->numInputs; i++) {
@@ -1336,7 +1415,20 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_process
     }
   }
 
+  // the block may start part way into the arrays, if it has been split. The pointers are restored before they are released.
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] += offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] += offset;
+  }
   effect->processDoubleReplacing(effect, cinputs, coutputs, (int) sampleFrames);
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] -= offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] -= offset;
+  }
 
   for(int i = 0; i < effect->numInputs; i++) {
     env->ReleasePrimitiveArrayCritical(
@@ -1350,8 +1442,66 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_process
         coutputs[i],
         0);
   }
+}
 
-  freeMidiEvents(vstes, env);
+/*
+ * The direct buffer variants hand the plugin pointers straight into the memory backing the
+ * java buffers. Nothing is pinned and nothing is copied, so there is nothing to release afterwards.
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processReplacingDirect
+  (JNIEnv *env, jclass jclazz, jobjectArray jinputs, jobjectArray joutputs, jint offset, jint sampleFrames, jlong ae) {
+  
+  AEffect *effect = (AEffect *)ae;
+  
+  float **cinputs = ((hostLocalVars *) effect->resvd1)->fInputs;
+  float **coutputs = ((hostLocalVars *) effect->resvd1)->fOutputs;
+  for(int i = 0; i < effect->numInputs; i++) {
+    jobject jbuffer = env->GetObjectArrayElement(jinputs, i);
+    cinputs[i] = (float *) env->GetDirectBufferAddress(jbuffer);
+    env->DeleteLocalRef(jbuffer);
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    jobject jbuffer = env->GetObjectArrayElement(joutputs, i);
+    coutputs[i] = (float *) env->GetDirectBufferAddress(jbuffer);
+    env->DeleteLocalRef(jbuffer);
+  }
+
+  // the block may start part way into the buffers, if it has been split
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] += offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] += offset;
+  }
+  effect->processReplacing(effect, cinputs, coutputs, (int) sampleFrames);
+}
+
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_processDoubleReplacingDirect
+  (JNIEnv *env, jclass jclazz, jobjectArray jinputs, jobjectArray joutputs, jint offset, jint sampleFrames, jlong ae) {
+  
+  AEffect *effect = (AEffect *)ae;
+  
+  double **cinputs = ((hostLocalVars *) effect->resvd1)->dInputs;
+  double **coutputs = ((hostLocalVars *) effect->resvd1)->dOutputs;
+  for(int i = 0; i < effect->numInputs; i++) {
+    jobject jbuffer = env->GetObjectArrayElement(jinputs, i);
+    cinputs[i] = (double *) env->GetDirectBufferAddress(jbuffer);
+    env->DeleteLocalRef(jbuffer);
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    jobject jbuffer = env->GetObjectArrayElement(joutputs, i);
+    coutputs[i] = (double *) env->GetDirectBufferAddress(jbuffer);
+    env->DeleteLocalRef(jbuffer);
+  }
+
+  // the block may start part way into the buffers, if it has been split
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] += offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] += offset;
+  }
+  effect->processDoubleReplacing(effect, cinputs, coutputs, (int) sampleFrames);
 }
 
 JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_canDoubleReplacing
@@ -1361,12 +1511,10 @@ JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_canDoub
 }
 
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
-  (JNIEnv *env, jclass jclazz, jobjectArray messages, jobjectArray jinputs, jobjectArray joutputs, jint sampleFrames, jlong ae) {
+  (JNIEnv *env, jclass jclazz, jobjectArray jinputs, jobjectArray joutputs, jint offset, jint sampleFrames, jlong ae) {
   
   AEffect *effect = (AEffect *)ae;
   
-  VstEvents *vstes = setMidiEvents(env, messages, effect);
-
   float **cinputs = ((hostLocalVars *) effect->resvd1)->fInputs;
   float **coutputs = ((hostLocalVars *) effect->resvd1)->fOutputs;
   for(int i = 0; i < effect->numInputs; i++) {
@@ -1392,7 +1540,20 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
     }
   }
 
+  // the block may start part way into the arrays, if it has been split. The pointers are restored before they are released.
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] += offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] += offset;
+  }
   effect->process(effect, cinputs, coutputs, (int) sampleFrames);
+  for(int i = 0; i < effect->numInputs; i++) {
+    cinputs[i] -= offset;
+  }
+  for(int i = 0; i < effect->numOutputs; i++) {
+    coutputs[i] -= offset;
+  }
 
   for(int i = 0; i < effect->numInputs; i++) {
     env->ReleasePrimitiveArrayCritical(
@@ -1406,8 +1567,6 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
         coutputs[i],
         0);
   }
-
-  freeMidiEvents(vstes, env);
 }
 
 
@@ -1418,6 +1577,59 @@ JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setPara
   effect->setParameter(effect, (int) index, (float) value);
 }
 
+/**
+ * Sets a batch of parameters with one call across the native boundary. The arrays are copied into the
+ * parameter pool rather than pinned with GetPrimitiveArrayCritical, because the plugin may call back into
+ * java (audioMasterAutomate) from within setParameter. GetIntArrayElements and GetFloatArrayElements are
+ * not used either, as they may allocate. Callers hold the processLock, so that one pool serves all calls.
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setParameters___3I_3FIJ
+  (JNIEnv *env, jclass jclazz, jintArray jindices, jfloatArray jvalues, jint numParameters, jlong ae) {
+
+  AEffect *effect = (AEffect *)ae;
+  hostLocalVars *hostVars = (hostLocalVars *) effect->resvd1;
+  ensureParameterPoolCapacity(hostVars, numParameters);
+  jint *indices = hostVars->parameterIndices;
+  jfloat *values = hostVars->parameterValues;
+  env->GetIntArrayRegion(jindices, 0, numParameters, indices);
+  env->GetFloatArrayRegion(jvalues, 0, numParameters, values);
+  for (int i = 0; i < numParameters; i++) {
+    effect->setParameter(effect, (int) indices[i], (float) values[i]);
+  }
+}
+
+/**
+ * Sets parameters [0, numParameters) with one call across the native boundary.
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setParameters___3FIJ
+  (JNIEnv *env, jclass jclazz, jfloatArray jvalues, jint numParameters, jlong ae) {
+
+  AEffect *effect = (AEffect *)ae;
+  hostLocalVars *hostVars = (hostLocalVars *) effect->resvd1;
+  ensureParameterPoolCapacity(hostVars, numParameters);
+  jfloat *values = hostVars->parameterValues;
+  env->GetFloatArrayRegion(jvalues, 0, numParameters, values);
+  for (int i = 0; i < numParameters; i++) {
+    effect->setParameter(effect, i, (float) values[i]);
+  }
+}
+
+/**
+ * Gets parameters [0, numParameters) with one call across the native boundary.
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_getParameters
+  (JNIEnv *env, jclass jclazz, jfloatArray jvalues, jint numParameters, jlong ae) {
+
+  AEffect *effect = (AEffect *)ae;
+  hostLocalVars *hostVars = (hostLocalVars *) effect->resvd1;
+  ensureParameterPoolCapacity(hostVars, numParameters);
+  jfloat *values = hostVars->parameterValues;
+  for (int i = 0; i < numParameters; i++) {
+    values[i] = (jfloat) effect->getParameter(effect, i);
+  }
+  env->SetFloatArrayRegion(jvalues, 0, numParameters, values);
+}
+
 JNIEXPORT jfloat JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_getParameter
   (JNIEnv *env, jclass jclazz, jint index, jlong ae) {
 
@@ -26,6 +26,10 @@ import com.synthbot.audioplugin.vst.VstVersion;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
@@ -45,14 +49,26 @@ import javax.sound.midi.SysexMessage;
  * before executing any native code. If a method is called and the native library is not loaded,
  * then an <code>IllegalStateException</code> will be thrown.
  * 
- * All public methods of JVstHost2 and its subclasses are synchronized. They are thread-safe.
+ * All public methods of JVstHost2 and its subclasses are thread-safe. Control methods, such as
+ * <code>getParameterDisplay</code> or <code>getProgramName</code>, are synchronized on the JVstHost2 object.
+ * The audio methods, such as <code>processReplacing</code>, are instead synchronized on a separate process lock.
+ * A thread querying the plugin will therefore never stall the audio thread. Only methods which change
+ * the configuration of the plugin, such as <code>turnOn</code>, <code>turnOff</code>, <code>setBlockSize</code>
+ * and <code>turnOffAndUnloadPlugin</code>, take both locks, and always in that order.
  *
  */
 public abstract class JVstHost2 {
   
   protected final File pluginFile;
   protected final long vstPluginPtr;
-  protected boolean isNativeComponentLoaded;
+  protected volatile boolean isNativeComponentLoaded;
+  
+  /**
+   * Guards the audio plane: processing, the native host arrays and event pool, and any state read
+   * while processing. It is never held while waiting for the JVstHost2 monitor. The native
+   * audioMasterIOChanged callback synchronizes on this lock, since it reallocates the native host arrays.
+   */
+  protected final Object processLock = new Object();
   
   protected JVstHost2(File pluginFile, long pluginPtr) {
     this.pluginFile = pluginFile;
@@ -85,7 +101,8 @@ public abstract class JVstHost2 {
   /**
    * Instantiates a subclass of JVstHost, depending on the VST version. The resulting plugin is
    * only initialised, and not started, nor supplied with necessary information, such as sample rate
-   * or block size.
+   * or block size. If the system property <code>jvsthost.jmx</code> is <code>true</code>, the new instance
+   * is registered with the platform MBean server. See <code>JVstHostMonitor</code>.
    * @param file  The location of the native plugin library.
    * @return A new instance of a <code>JVstHost2</code> subclass corresponding to the plugin's vst version.
    * @throws FileNotFoundException  Thrown if the given VST File does not exist.
@@ -103,30 +120,41 @@ public abstract class JVstHost2 {
     long pluginPtr = loadPlugin(file.toString());
     int vstVersionInt = getVstVersion(pluginPtr);
     VstVersion vstVersion = VstVersion.getVersion(vstVersionInt);
+    JVstHost2 vst;
     switch (vstVersion) {
       case VST20: {
-        return new JVstHost20(file, pluginPtr);        
+        vst = new JVstHost20(file, pluginPtr);
+        break;
       }
       case VST21: {
-        return new JVstHost21(file, pluginPtr);
+        vst = new JVstHost21(file, pluginPtr);
+        break;
       }
       case VST22: {
-        return new JVstHost22(file, pluginPtr); 
+        vst = new JVstHost22(file, pluginPtr);
+        break;
       }
       case VST23: {
-        return new JVstHost23(file, pluginPtr);
+        vst = new JVstHost23(file, pluginPtr);
+        break;
       }
       case VST24: {
-        return new JVstHost24(file, pluginPtr);
+        vst = new JVstHost24(file, pluginPtr);
+        break;
       }
       default: {
         //throw new JVstLoadException("Unsupported VST version: " + Integer.toString(vstVersionInt));
         System.err.println("The plugin has reported an unknown vst version number, \"" +
             Integer.toString(vstVersionInt) + "\". JVstHost will attempt to load it as a " +
             "VST version 2.0, though errors may still occur.");
-        return new JVstHost20(file, pluginPtr);
+        vst = new JVstHost20(file, pluginPtr);
+        break;
       }
     }
+    if (Boolean.getBoolean(JVstHostMonitor.REGISTER_PROPERTY)) {
+      JVstHostMonitor.register(vst);
+    }
+    return vst;
   }
   
   /**
@@ -143,9 +171,29 @@ public abstract class JVstHost2 {
     }
   }
 
+  /**
+   * The version of the interface between the java classes and the native library. It is incremented whenever
+   * the signature of a native method changes, or a native method is added. A library built for another version
+   * would crash or throw an <code>UnsatisfiedLinkError</code> at an arbitrary later point, so it is rejected when
+   * the class is loaded.
+   */
+  protected static final int NATIVE_INTERFACE_VERSION = 2;
+  
   static {
     System.loadLibrary("jvsthost2");
+    int nativeVersion;
+    try {
+      nativeVersion = getNativeInterfaceVersion();
+    } catch (UnsatisfiedLinkError ule) {
+      nativeVersion = 1; // libraries built before the version was introduced
+    }
+    if (nativeVersion != NATIVE_INTERFACE_VERSION) {
+      throw new UnsatisfiedLinkError("The jvsthost2 native library implements interface version " + nativeVersion +
+          ", but this version of JVstHost requires interface version " + NATIVE_INTERFACE_VERSION +
+          ". Rebuild the native library from JVstHost.cpp.");
+    }
   }
+  private static native int getNativeInterfaceVersion();
   
   @Override
   public String toString() {
@@ -157,11 +205,11 @@ public abstract class JVstHost2 {
    * JVstHost2 object while the plugin is not loaded will throw an <code>IllegalStateException</code>.
    * @return  True if the native component is successfully loaded. False otherwise.
    */
-  public synchronized boolean isNativeComponentLoaded() {
+  public boolean isNativeComponentLoaded() {
     return isNativeComponentLoaded;
   }
   
-  protected synchronized void assertNativeComponentIsLoaded() {
+  protected void assertNativeComponentIsLoaded() {
     if (!isNativeComponentLoaded()) {
       throw new IllegalStateException("The native component is not currently loaded.");
     }
@@ -220,6 +268,120 @@ public abstract class JVstHost2 {
    */
   public abstract void setParameter(int index, float value);
   
+  /**
+   * Gets the current values of the first <code>values.length</code> parameters with a single call to the native plugin.
+   * This is much faster than calling <code>getParameter</code> for each parameter in turn.
+   * @param values  The parameter values are written into this array, starting at index zero.
+   * @throws IndexOutOfBoundsException  Thrown if the array is longer than numParameters.
+   * @throws NullPointerException  Thrown if the array is null.
+   */
+  public abstract void getParameters(float[] values);
+  
+  /**
+   * Sets the first <code>values.length</code> parameters with a single call to the native plugin.
+   * This is much faster than calling <code>setParameter</code> for each parameter in turn. As with
+   * <code>setParameter</code>, a warning is printed for values outside of [0,1].
+   * @param values  The parameter values, starting with parameter zero.
+   * @throws IndexOutOfBoundsException  Thrown if the array is longer than numParameters.
+   * @throws NullPointerException  Thrown if the array is null.
+   */
+  public abstract void setParameters(float[] values);
+  
+  /**
+   * Sets the given parameters with a single call to the native plugin. The parameters are set in order,
+   * so that if an index appears more than once, the last value is kept.
+   * @param indices  The parameter indices.
+   * @param values  The parameter values, such that <code>values[i]</code> is the new value of parameter <code>indices[i]</code>.
+   * @throws IllegalArgumentException  Thrown if the arrays are not of the same length.
+   * @throws IndexOutOfBoundsException  Thrown if any parameter index is < 0 or >= numParameters.
+   * @throws NullPointerException  Thrown if either array is null.
+   */
+  public abstract void setParameters(int[] indices, float[] values);
+  
+  /**
+   * Queues a parameter change to be applied at the start of the next block processed by a <code>process</code> variant.
+   * Unlike <code>setParameter</code>, this method never blocks and never calls into the plugin, and may therefore be
+   * called at a high rate from any thread. Changes to the same parameter which fall within one block are coalesced,
+   * and all changes in the block are applied together in one native call. If the queue is full, the change is dropped.
+   * @param index  Parameter index.
+   * @param value  Parameter value.
+   * @throws IndexOutOfBoundsException  Thrown if the parameter index is < 0 or >= numParameters.
+   */
+  public abstract void queueParameterChange(int index, float value);
+  
+  /**
+   * Queues a parameter change at the given offset from the start of the next block. The change is only applied at
+   * exactly this offset if sample-accurate parameter changes are enabled. Otherwise it is applied at the start of the
+   * block in which it falls.
+   * @param index  Parameter index.
+   * @param value  Parameter value.
+   * @param sampleOffset  The number of samples from the start of the next block at which the change takes effect.
+   * @throws IllegalArgumentException  Thrown if the sample offset is negative.
+   * @throws IndexOutOfBoundsException  Thrown if the parameter index is < 0 or >= numParameters.
+   * @see #setSampleAccurateParameterChanges(boolean)
+   */
+  public abstract void queueParameterChange(int index, float value, int sampleOffset);
+  
+  /**
+   * Queues a parameter change at an absolute sample time, as counted by <code>getSamplePosition</code>.
+   * Changes whose time has already passed are applied at the start of the next block.
+   * @param index  Parameter index.
+   * @param value  Parameter value.
+   * @param sampleTime  The absolute sample time at which the change takes effect.
+   * @throws IndexOutOfBoundsException  Thrown if the parameter index is < 0 or >= numParameters.
+   */
+  public abstract void queueParameterChangeAt(int index, float value, long sampleTime);
+  
+  /**
+   * Sets whether queued parameter changes take effect at exactly their sample time. If enabled, each processed block is
+   * split into several calls to the plugin at the sample times of the changes which fall within it. MIDI messages
+   * remain at their correct offsets. The default is disabled, in which case every block is processed with
+   * one call, and changes are applied at the start of the block in which they fall.
+   * @param isSampleAccurate  True if blocks should be split at queued parameter changes.
+   */
+  public abstract void setSampleAccurateParameterChanges(boolean isSampleAccurate);
+  
+  /**
+   * Indicates if queued parameter changes take effect at exactly their sample time.
+   * @see #setSampleAccurateParameterChanges(boolean)
+   */
+  public abstract boolean isSampleAccurateParameterChanges();
+  
+  /**
+   * Returns an estimate of the number of queued parameter changes which have not yet been applied.
+   */
+  public abstract int getQueuedParameterChangeCount();
+  
+  /**
+   * Returns the number of queued parameter changes which were never applied. This includes changes offered
+   * to a full queue, changes to parameters which the plugin removed before they came due, and any changes
+   * still queued when the plugin is unloaded.
+   */
+  public abstract long getParameterQueueDropCount();
+  
+  /**
+   * Returns the number of parameter changes which have been applied to the plugin, whether set directly,
+   * dequeued by a process call, or automated by the plugin itself.
+   */
+  public abstract long getParameterChangeCount();
+  
+  /**
+   * Returns the description of a parameter: its name, label and whether it can be automated. Descriptions
+   * are read from the plugin once, and cached until the plugin changes its parameters or program.
+   * <code>getParameterName</code>, <code>getParameterLabel</code> and <code>isParameterAutomatable</code>
+   * are answered from the same cache.
+   * @param index  Parameter index.
+   * @throws IndexOutOfBoundsException  Thrown if the parameter index is < 0 or >= numParameters.
+   */
+  public abstract ParameterDescriptor getParameterDescriptor(int index);
+  
+  /**
+   * Returns the descriptions of all parameters, indexed by parameter index.
+   * @return  A new array, which the caller is free to modify.
+   * @see #getParameterDescriptor(int)
+   */
+  public abstract ParameterDescriptor[] getParameterDescriptors();
+  
   /**
    * Indicates if a parameter can be automated.
    * @param index  Parameter index.
@@ -230,7 +392,8 @@ public abstract class JVstHost2 {
   
   /**
    * Queues the given <code>ShortMessage</code> until the next time that a <code>process</code> variant is called.
-   * The queue is cleared upon the execution of <code>process</code>.
+   * The queue is cleared upon the execution of <code>process</code>. The message is copied, and may be reused by the caller.
+   * This method never blocks, and may be called from any thread. If the queue is full, the message is dropped.
    * @param message  A MIDI <code>ShortMessage</code> to be queued.
    * @throws NullPointerException  Thrown if the queued midi message is null.
    */
@@ -238,12 +401,91 @@ public abstract class JVstHost2 {
 
   /**
    * Queues the given <code>SysexMessage</code> until the next time that a <code>process</code> variant is called.
-   * The queue is cleared upon the execution of <code>process</code>.
+   * The queue is cleared upon the execution of <code>process</code>. The message is copied, and may be reused by the caller.
+   * This method never blocks, and may be called from any thread. If the queue is full, the message is dropped.
    * @param message  A MIDI <code>SysexMessage</code> to be queued.
    * @throws NullPointerException  Thrown if the queued midi message is null.
    */
   public abstract void queueMidiMessage(SysexMessage message);
   
+  /**
+   * Queues the given <code>ShortMessage</code> to be passed to the plugin at the given offset from the start of the
+   * next block. If the offset lies beyond the end of that block, the message is passed at the correct position within
+   * a later block. Messages are therefore sample accurate regardless of the block size.
+   * @param message  A MIDI <code>ShortMessage</code> to be queued.
+   * @param sampleOffset  The number of samples from the start of the next block at which the message takes effect.
+   * @throws IllegalArgumentException  Thrown if the sample offset is negative.
+   * @throws NullPointerException  Thrown if the queued midi message is null.
+   */
+  public abstract void queueMidiMessage(ShortMessage message, int sampleOffset);
+  
+  /**
+   * Queues the given <code>SysexMessage</code> to be passed to the plugin at the given offset from the start of the
+   * next block.
+   * @param message  A MIDI <code>SysexMessage</code> to be queued.
+   * @param sampleOffset  The number of samples from the start of the next block at which the message takes effect.
+   * @throws IllegalArgumentException  Thrown if the sample offset is negative.
+   * @throws NullPointerException  Thrown if the queued midi message is null.
+   */
+  public abstract void queueMidiMessage(SysexMessage message, int sampleOffset);
+  
+  /**
+   * Queues the given <code>ShortMessage</code> to be passed to the plugin at an absolute sample time, as counted by
+   * <code>getSamplePosition</code>. Messages whose time has already passed are passed at the start of the next block.
+   * @param message  A MIDI <code>ShortMessage</code> to be queued.
+   * @param sampleTime  The absolute sample time at which the message takes effect.
+   * @throws NullPointerException  Thrown if the queued midi message is null.
+   */
+  public abstract void queueMidiMessageAt(ShortMessage message, long sampleTime);
+  
+  /**
+   * Queues the given <code>SysexMessage</code> to be passed to the plugin at an absolute sample time, as counted by
+   * <code>getSamplePosition</code>.
+   * @param message  A MIDI <code>SysexMessage</code> to be queued.
+   * @param sampleTime  The absolute sample time at which the message takes effect.
+   * @throws NullPointerException  Thrown if the queued midi message is null.
+   */
+  public abstract void queueMidiMessageAt(SysexMessage message, long sampleTime);
+  
+  /**
+   * Returns the absolute sample time of the start of the next block. The count starts at zero when the
+   * plugin is loaded, and advances by the block size of every processed block.
+   */
+  public abstract long getSamplePosition();
+  
+  /**
+   * Sets the sample position to zero, as for a newly loaded plugin. Used to recycle instances.
+   */
+  protected abstract void resetSamplePosition();
+  
+  /**
+   * Discards all queued MIDI messages and parameter changes which have not yet been passed to the plugin.
+   * They are counted as dropped.
+   */
+  public abstract void clearQueuedEvents();
+  
+  /**
+   * Returns an estimate of the number of MIDI messages waiting for the next <code>process</code> variant.
+   */
+  public abstract int getQueuedMidiMessageCount();
+  
+  /**
+   * Returns the number of MIDI messages which may be queued at once. Messages queued beyond this are dropped.
+   */
+  public abstract int getMidiQueueCapacity();
+  
+  /**
+   * Returns the number of times that <code>queueMidiMessage</code> found the queue full. The queue never
+   * blocks; a message offered to a full queue is dropped.
+   */
+  public abstract long getMidiQueueOverflowCount();
+  
+  /**
+   * Returns the number of queued MIDI messages which were never passed to the plugin. This includes
+   * overflowed messages, and any messages still queued when the plugin is unloaded.
+   */
+  public abstract long getMidiQueueDropCount();
+  
   /**
    * Generate audio output from the plugin, replacing the contents of the output array. Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin.
    * @param inputs  The audio input to the plugin is read from this array.
@@ -256,6 +498,99 @@ public abstract class JVstHost2 {
    */
   public abstract void processReplacing(float[][] inputs, float[][] outputs, int blockSize);
   
+  /**
+   * Generate audio output from the plugin, replacing the contents of the output buffers. Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin.
+   * The buffers must be direct and in native byte order, such as those returned by <code>allocateFloatChannels</code>.
+   * The plugin reads from and writes to the buffer memory in place, so no audio data is copied across the native boundary.
+   * Each channel starts at index 0 of its buffer; the buffer position is ignored.
+   * @param inputs  The audio input to the plugin is read from these buffers.
+   * @param outputs  The output of the plugin will be placed into these buffers.
+   * @param blockSize  Number of samples to read from the input and output buffers. May not be larger than the capacity of the buffers.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds, or if a buffer is not direct or not in native byte order.
+   * @throws IllegalStateException  Thrown if the plugin does not implement <code>processReplacing</code>. Check <code>canReplacing</code>.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public abstract void processReplacing(FloatBuffer[] inputs, FloatBuffer[] outputs, int blockSize);
+  
+  /**
+   * Generate audio output from the plugin for a buffer of any length, replacing the contents of the output array.
+   * The buffer is processed in sub-blocks of the size set with <code>setBlockSize</code>, directly within the given
+   * arrays, so nothing is copied or allocated per sub-block. Queued MIDI messages and parameter changes are passed to
+   * the plugin in the sub-block in which they fall, with offsets relative to the start of the whole buffer.
+   * This is intended for offline rendering, where a buffer may be millions of samples long.
+   * @param inputs  The audio input to the plugin is read from this array.
+   * @param outputs  The output of the plugin will be placed into this array.
+   * @param numFrames  Number of samples to process. May not be larger than the length of the arrays.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds.
+   * @throws IllegalStateException  Thrown if the plugin does not implement <code>processReplacing</code>. Check <code>canReplacing</code>.
+   * Also thrown if no block size has been set.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public abstract void processLong(float[][] inputs, float[][] outputs, int numFrames);
+  
+  /**
+   * Generate audio output from the plugin for direct buffers of any length, in sub-blocks of the configured block size.
+   * @see #processLong(float[][], float[][], int)
+   */
+  public abstract void processLong(FloatBuffer[] inputs, FloatBuffer[] outputs, int numFrames);
+  
+  /**
+   * Creates a <code>ProcessContext</code> which processes the given channels with <code>processReplacing</code>.
+   * The channels are checked once, here, instead of on every block.
+   * @param inputs  The audio input to the plugin is read from this array.
+   * @param outputs  The output of the plugin will be placed into this array.
+   * @param blockSize  Number of samples to process per block. May not be larger than the length of the arrays.
+   * @return  A context whose <code>process</code> method processes one block.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds.
+   * @throws IllegalStateException  Thrown if the plugin does not implement <code>processReplacing</code>. Check <code>canReplacing</code>.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public abstract ProcessContext newProcessContext(float[][] inputs, float[][] outputs, int blockSize);
+  
+  /**
+   * Creates a <code>ProcessContext</code> which processes the given direct buffers with <code>processReplacing</code>.
+   * @see #newProcessContext(float[][], float[][], int)
+   */
+  public abstract ProcessContext newProcessContext(FloatBuffer[] inputs, FloatBuffer[] outputs, int blockSize);
+  
+  /**
+   * Allocates direct, native-ordered channel buffers suitable for use with the <code>FloatBuffer</code> variant
+   * of <code>processReplacing</code>. Buffers should be allocated once and reused for every block.
+   * @param numChannels  The number of channels.
+   * @param length  The length of each channel in samples.
+   * @return  An array of <code>numChannels</code> buffers, each with a capacity of <code>length</code> samples.
+   * @throws IllegalArgumentException  Thrown if either argument is negative.
+   */
+  public static FloatBuffer[] allocateFloatChannels(int numChannels, int length) {
+    if (numChannels < 0 || length < 0) {
+      throw new IllegalArgumentException("The number of channels and their length must be non-negative: " + numChannels + ", " + length);
+    }
+    FloatBuffer[] channels = new FloatBuffer[numChannels];
+    for (int i = 0; i < numChannels; i++) {
+      channels[i] = ByteBuffer.allocateDirect(4 * length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+    return channels;
+  }
+  
+  /**
+   * Allocates direct, native-ordered channel buffers suitable for use with the <code>DoubleBuffer</code> variant
+   * of <code>processDoubleReplacing</code> in <code>JVstHost24</code>.
+   * @param numChannels  The number of channels.
+   * @param length  The length of each channel in samples.
+   * @return  An array of <code>numChannels</code> buffers, each with a capacity of <code>length</code> samples.
+   * @throws IllegalArgumentException  Thrown if either argument is negative.
+   */
+  public static DoubleBuffer[] allocateDoubleChannels(int numChannels, int length) {
+    if (numChannels < 0 || length < 0) {
+      throw new IllegalArgumentException("The number of channels and their length must be non-negative: " + numChannels + ", " + length);
+    }
+    DoubleBuffer[] channels = new DoubleBuffer[numChannels];
+    for (int i = 0; i < numChannels; i++) {
+      channels[i] = ByteBuffer.allocateDirect(8 * length).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+    return channels;
+  }
+  
   /**
    * Determines if the plugin implements processReplacing(). It is an error to call
    * processReplacing() if the method is not implemented.
@@ -263,6 +598,27 @@ public abstract class JVstHost2 {
    */
   public abstract boolean canReplacing();
   
+  /**
+   * Determines if the plugin processes double-precision audio natively. Only VST 2.4 plugins may do so.
+   * <code>processDouble</code> may be used with any plugin regardless.
+   * @return  True if the plugin implements processDoubleReplacing(). False otherwise.
+   */
+  public abstract boolean canDoubleReplacing();
+  
+  /**
+   * Generate audio output from the plugin at double precision, replacing the contents of the output array.
+   * Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin. If the plugin
+   * can process doubles natively (see <code>canDoubleReplacing</code>), then the arrays are handed to it directly.
+   * Otherwise the audio is converted to and from single precision in reusable scratch buffers, so that a chain
+   * of mixed VST 2.x plugins may run at one precision without allocating on every block.
+   * @param inputs  The audio input to the plugin is read from this array.
+   * @param outputs  The output of the plugin will be placed into this array.
+   * @param blockSize  Number of samples to read from the input and output buffers. May not be larger than the length of the arrays.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public abstract void processDouble(double[][] inputs, double[][] outputs, int blockSize);
+  
   /**
    * Generate audio output from the plugin, adding the output to the output array. Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin.
    * @param inputs  The audio input to the plugin is read from this array.
@@ -296,6 +652,8 @@ public abstract class JVstHost2 {
   /**
    * Get the display string of a parameter.
    * Frequency: 10 Hz (Name: Display Label)
+   * The string is cached for a short time (100 milliseconds), so that a GUI may poll it cheaply. The cached string
+   * is discarded as soon as the parameter is changed by the host, or the plugin reports a change via audioMasterAutomate.
    * @param index  Parameter index.
    * @throws IndexOutOfBoundsException  Thrown if the parameter index is < 0 or >= numParameters.
    */
@@ -493,12 +851,56 @@ public abstract class JVstHost2 {
    */
   public abstract void turnOff();
   
+  /**
+   * Indicates if the plugin is turned on, and may therefore process audio.
+   */
+  public abstract boolean isTurnedOn();
+  
   /**
    * Changes the bypass mode of the plugin, if it supports the option.
    * @param bypass  True if bypass should be turned on. False otherwise.
    */
   public abstract void setBypass(boolean bypass);
   
+  /**
+   * Returns the last value passed to <code>setBypass</code>. The plugin may not support bypassing.
+   */
+  public abstract boolean isBypassed();
+  
+  /**
+   * Returns the length of the plugin's tail in samples, as reported by the plugin. Zero means that the
+   * plugin does not report its tail, and one means that it has no tail.
+   */
+  public abstract int getTailSize();
+  
+  /**
+   * Returns false if the plugin declares that it produces no sound when its input is silent.
+   */
+  public abstract boolean producesSoundInStop();
+  
+  /**
+   * Enables or disables idle skipping. While enabled, a block is not passed to the plugin if its inputs
+   * are silent, no MIDI messages or parameter changes are queued, the plugin's output has been silent,
+   * and the inputs have been silent for longer than the plugin's tail. The outputs of a skipped block
+   * are filled with zeros. Processing resumes with the first block with non-silent input or a queued event.
+   * If the plugin does not report its tail, <code>JVstHost20.UNKNOWN_TAIL_SECONDS</code> is assumed.
+   */
+  public abstract void setIdleSkipping(boolean isIdleSkipping);
+  
+  public abstract boolean isIdleSkipping();
+  
+  /**
+   * Returns the number of blocks which were not passed to the plugin because it was idle.
+   */
+  public abstract long getSkippedBlockCount();
+  
+  /**
+   * Returns the histogram of the time taken by this plugin to process each block. Every block passed to
+   * the plugin by any of the process methods is timed, including the dispatch of its queued events.
+   * Skipped idle blocks are not recorded. The histogram may be read, or reset, from any thread.
+   */
+  public abstract ProcessTimeHistogram getProcessTimeHistogram();
+  
   /**
    * Returns a <code>VstPinProperties</code> object with details on the requested input. Not all
    * plugins support this method. Be sure to check the output with <code>VstPinProperties.isValid</code>
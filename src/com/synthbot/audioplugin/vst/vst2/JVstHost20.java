@@ -24,30 +24,87 @@ package com.synthbot.audioplugin.vst.vst2;
 import com.synthbot.audioplugin.vst.VstVersion;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiMessage;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
 
 public class JVstHost20 extends JVstHost2 {
   
-  protected int numInputs; // not final because can change (ioChange)
-  protected int numOutputs; // locally cached for error checking
-  protected int numParameters;
+  /**
+   * The maximum number of MIDI messages which may wait for the next block.
+   */
+  public static final int MIDI_QUEUE_CAPACITY = 1024;
+  
+  /**
+   * The number of parameter changes which may be queued with <code>queueParameterChange</code> before changes are dropped.
+   */
+  public static final int PARAMETER_QUEUE_CAPACITY = 1024;
+  
+  /**
+   * The longest time for which a string returned by <code>getParameterDisplay</code> is reused.
+   */
+  public static final long PARAMETER_DISPLAY_CACHE_MILLIS = 100L;
+  
+  /**
+   * The number of ints occupied by each packed MIDI event passed to the native layer.
+   */
+  protected static final int MIDI_EVENT_STRIDE = MidiEventQueue.EVENT_STRIDE;
+  
+  /**
+   * The peak level below which a block is considered silent by idle skipping, about -120 dBFS.
+   */
+  public static final float SILENCE_THRESHOLD = 1.0e-6f;
+  
+  /**
+   * The tail assumed by idle skipping for plugins which do not report their tail.
+   */
+  public static final float UNKNOWN_TAIL_SECONDS = 5f;
+  
+  protected volatile int numInputs; // not final because can change (ioChange)
+  protected volatile int numOutputs; // locally cached for error checking
+  protected volatile int numParameters; // volatile because ioChange updates them under the processLock
   protected final int numPrograms;
   protected float sampleRate; // the last sampleRate to which the plugin was set
   protected int blockSize; // the last maximum blockSize to which the plugin was set
   protected final boolean canProcessReplacing;
   protected final boolean hasNativeEditor;
   protected volatile Thread editorThread; // volatile because the variable can be get/set by either the vst thread or the editor thread
-  protected boolean isTurnedOff;
+  protected volatile boolean isTurnedOff; // volatile so that the state may be monitored without locking
+  protected volatile boolean isBypassed; // the last value passed to setBypass
+  
+  protected final MidiEventQueue midiEventQueue;
+  protected final ParameterChangeQueue parameterChangeQueue;
+  protected volatile boolean isSampleAccurateParameterChanges;
+  protected volatile long samplePosition; // the absolute sample time of the start of the next block, written only under the processLock
+  protected int configurationGeneration; // incremented whenever existing ProcessContexts become invalid
+  
+  protected volatile ParameterDescriptor[] parameterDescriptors; // built lazily. Set to null when the plugin changes its parameters
+  protected volatile AtomicReferenceArray<String> parameterDisplays; // entries are cleared from any thread when a value changes
+  protected long[] parameterDisplayTimes; // only accessed under the monitor
   
-  protected final List<MidiMessage> queuedMidiMessages;
+  // single precision copies of the channels passed to processDouble. Only accessed under the processLock.
+  protected float[][] scratchInputs;
+  protected float[][] scratchOutputs;
+  protected int scratchLength;
   
-  protected final List<JVstHostListener> hostListeners;
+  // idle skipping state. Only accessed under the processLock.
+  protected volatile boolean isIdleSkipping;
+  protected long idleTailSize; // in samples, or negative if it must be queried again
+  protected long quietSamples; // the number of consecutive samples with silent input and no events
+  protected boolean isOutputSilent; // true if the last processed block had silent input and output
+  protected volatile long skippedBlockCount;
+  
+  protected final ProcessTimeHistogram processTimeHistogram; // records every block passed to the plugin
+  protected final AtomicLong parameterChangeCount; // parameters may be changed by the audio, control and editor threads
+  
+  protected final CopyOnWriteArrayList<JVstHostListener> hostListeners; // callbacks may come from the audio thread, so they iterate without locking
   
   protected JVstHost20(File pluginFile, long pluginPtr) {
     super(pluginFile, pluginPtr);
@@ -61,9 +118,17 @@ public class JVstHost20 extends JVstHost2 {
     hasNativeEditor = (hasEditor(vstPluginPtr) != 0);
     isTurnedOff = true;
     
-    queuedMidiMessages = new ArrayList<MidiMessage>();
+    midiEventQueue = new MidiEventQueue(MIDI_QUEUE_CAPACITY);
+    parameterChangeQueue = new ParameterChangeQueue(PARAMETER_QUEUE_CAPACITY, numParameters);
+    isSampleAccurateParameterChanges = false;
+    samplePosition = 0L;
+    isIdleSkipping = false;
+    idleTailSize = -1L;
+    skippedBlockCount = 0L;
+    processTimeHistogram = new ProcessTimeHistogram();
+    parameterChangeCount = new AtomicLong(0L);
     
-    hostListeners = new ArrayList<JVstHostListener>();
+    hostListeners = new CopyOnWriteArrayList<JVstHostListener>();
   }
   
   /**
@@ -94,34 +159,343 @@ public class JVstHost20 extends JVstHost2 {
     if (isEditorOpen()) {
       closeEditor();
     }
-    turnOff();
-    unloadPlugin(vstPluginPtr);
-    isNativeComponentLoaded = false;
+    synchronized (processLock) {
+      turnOff();
+      midiEventQueue.clear();
+      parameterChangeQueue.clear();
+      unloadPlugin(vstPluginPtr);
+      isNativeComponentLoaded = false;
+    }
+    JVstHostMonitor.unregister(this);
+  }
+  
+  @Override
+  public void queueMidiMessage(SysexMessage message) {
+    queueMidiMessage(message, 0);
+  }
+  
+  @Override
+  public void queueMidiMessage(SysexMessage message, int sampleOffset) {
+    if (message == null) {
+      throw new NullPointerException("Queued midi message may not be null.");
+    }
+    if (sampleOffset < 0) {
+      throw new IllegalArgumentException("The sample offset must be non-negative: " + sampleOffset);
+    }
+    midiEventQueue.offer(message, sampleOffset, false);
   }
   
   @Override
-  public synchronized void queueMidiMessage(SysexMessage message) {
+  public void queueMidiMessageAt(SysexMessage message, long sampleTime) {
     if (message == null) {
       throw new NullPointerException("Queued midi message may not be null.");
     }
-    queuedMidiMessages.add(message);
+    midiEventQueue.offer(message, sampleTime, true);
   }
   
   @Override
-  public synchronized void queueMidiMessage(ShortMessage message) {
+  public void queueMidiMessage(ShortMessage message) {
+    queueMidiMessage(message, 0);
+  }
+  
+  @Override
+  public void queueMidiMessage(ShortMessage message, int sampleOffset) {
     if (message == null) {
       throw new NullPointerException("Queued midi message may not be null.");
     }
-    queuedMidiMessages.add(message);
+    if (sampleOffset < 0) {
+      throw new IllegalArgumentException("The sample offset must be non-negative: " + sampleOffset);
+    }
+    midiEventQueue.offer(message, sampleOffset, false);
   }
   
   @Override
-  public synchronized void processReplacing(float[][] inputs, float[][] outputs, int blockSize) {
-    assertNativeComponentIsLoaded();
-    assertIsTurnedOn();
+  public void queueMidiMessageAt(ShortMessage message, long sampleTime) {
+    if (message == null) {
+      throw new NullPointerException("Queued midi message may not be null.");
+    }
+    midiEventQueue.offer(message, sampleTime, true);
+  }
+  
+  @Override
+  public void clearQueuedEvents() {
+    synchronized (processLock) {
+      midiEventQueue.clear();
+      parameterChangeQueue.clear();
+    }
+  }
+  
+  @Override
+  public int getQueuedMidiMessageCount() {
+    return midiEventQueue.size();
+  }
+  
+  @Override
+  public int getMidiQueueCapacity() {
+    return midiEventQueue.getCapacity();
+  }
+  
+  @Override
+  public long getMidiQueueOverflowCount() {
+    return midiEventQueue.getOverflowCount();
+  }
+  
+  @Override
+  public long getMidiQueueDropCount() {
+    return midiEventQueue.getDropCount();
+  }
+  
+  @Override
+  public long getSamplePosition() {
+    return samplePosition;
+  }
+  
+  @Override
+  protected void resetSamplePosition() {
+    synchronized (processLock) {
+      samplePosition = 0L;
+    }
+  }
+  
+  /**
+   * Prepares the next segment of a block. The queued parameter changes which are due are applied, and the MIDI messages
+   * which fall within the segment are passed to the plugin, at their offsets within the segment. A block consists of a
+   * single segment, unless sample-accurate parameter changes are enabled and changes fall within the block.
+   * @param remaining  The number of samples remaining in the block which is about to be processed.
+   * @return  The number of samples in the segment.
+   */
+  protected int beginSegment(int remaining) {
+    int numChanges = parameterChangeQueue.schedule(samplePosition, remaining, isSampleAccurateParameterChanges, numParameters);
+    if (numChanges > 0) {
+      int[] indices = parameterChangeQueue.getScheduledIndices();
+      setParameters(indices, parameterChangeQueue.getScheduledValues(), numChanges, vstPluginPtr);
+      parameterChangeCount.addAndGet(numChanges);
+      for (int i = 0; i < numChanges; i++) {
+        invalidateParameterDisplay(indices[i]);
+      }
+    }
+    int segmentSize = parameterChangeQueue.getScheduledSegmentSize();
+    int numEvents = midiEventQueue.schedule(samplePosition, segmentSize);
+    if (numEvents > 0) {
+      processEvents(midiEventQueue.getScheduledEvents(), numEvents, midiEventQueue.getScheduledSysex(), vstPluginPtr);
+    }
+    return segmentSize;
+  }
+  
+  /**
+   * Sets the given parameters to the given values, in order, with one native call. The batch natives copy the
+   * arrays into a native buffer of the plugin, so they must only be called while holding the processLock.
+   */
+  protected static native void setParameters(int[] indices, float[] values, int numParameters, long pluginPtr);
+  
+  /**
+   * Passes a block of packed MIDI events to the plugin, in the format described by <code>MidiEventQueue</code>.
+   * The events remain valid on the native side until the following call, as the plugin may refer to them
+   * until the next process call has returned.
+   */
+  protected static native void processEvents(int[] events, int numEvents, byte[] sysex, long pluginPtr);
+  
+  @Override
+  public void processReplacing(float[][] inputs, float[][] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      processReplacingUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block with <code>processReplacing</code>, without checking any of the arguments.
+   */
+  protected void processReplacingUnchecked(float[][] inputs, float[][] outputs, int blockSize) {
+    processReplacingUnchecked(inputs, outputs, 0, blockSize);
+  }
+  
+  /**
+   * Processes the samples in [offset, offset + blockSize) of the channels as one block.
+   */
+  protected void processReplacingUnchecked(float[][] inputs, float[][] outputs, int offset, int blockSize) {
+    boolean isQuiet = isIdleSkipping && !hasEventsDue(blockSize) && isSilent(inputs, numInputs, offset, blockSize);
+    if (isQuiet && isIdle(blockSize)) {
+      clearChannels(outputs, numOutputs, offset, blockSize);
+      return;
+    }
+    long startTime = System.nanoTime();
+    int start = offset;
+    int end = offset + blockSize;
+    do {
+      int segmentSize = beginSegment(end - offset);
+      processReplacing(inputs, outputs, offset, segmentSize, vstPluginPtr);
+      samplePosition += segmentSize;
+      offset += segmentSize;
+    } while (offset < end);
+    processTimeHistogram.record(System.nanoTime() - startTime, blockSize, sampleRate);
+    if (isIdleSkipping) {
+      updateIdleState(isQuiet, isQuiet && isSilent(outputs, numOutputs, start, blockSize), blockSize);
+    }
+  }
+  protected static native void processReplacing(float[][] inputs, float[][] outputs, int offset, int blockSize, long pluginPtr);
+  
+  @Override
+  public void processReplacing(FloatBuffer[] inputs, FloatBuffer[] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      processReplacingUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block of direct buffers with <code>processReplacing</code>, without checking any of the arguments.
+   */
+  protected void processReplacingUnchecked(FloatBuffer[] inputs, FloatBuffer[] outputs, int blockSize) {
+    processReplacingUnchecked(inputs, outputs, 0, blockSize);
+  }
+  
+  /**
+   * Processes the samples in [offset, offset + blockSize) of the channels as one block.
+   */
+  protected void processReplacingUnchecked(FloatBuffer[] inputs, FloatBuffer[] outputs, int offset, int blockSize) {
+    boolean isQuiet = isIdleSkipping && !hasEventsDue(blockSize) && isSilent(inputs, numInputs, offset, blockSize);
+    if (isQuiet && isIdle(blockSize)) {
+      clearChannels(outputs, numOutputs, offset, blockSize);
+      return;
+    }
+    long startTime = System.nanoTime();
+    int start = offset;
+    int end = offset + blockSize;
+    do {
+      int segmentSize = beginSegment(end - offset);
+      processReplacingDirect(inputs, outputs, offset, segmentSize, vstPluginPtr);
+      samplePosition += segmentSize;
+      offset += segmentSize;
+    } while (offset < end);
+    processTimeHistogram.record(System.nanoTime() - startTime, blockSize, sampleRate);
+    if (isIdleSkipping) {
+      updateIdleState(isQuiet, isQuiet && isSilent(outputs, numOutputs, start, blockSize), blockSize);
+    }
+  }
+  protected static native void processReplacingDirect(FloatBuffer[] inputs, FloatBuffer[] outputs, int offset, int blockSize, long pluginPtr);
+  
+  @Override
+  public void processLong(float[][] inputs, float[][] outputs, int numFrames) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, numFrames);
+      assertBlockSizeIsSet();
+      for (int offset = 0; offset < numFrames; offset += blockSize) {
+        processReplacingUnchecked(inputs, outputs, offset, Math.min(blockSize, numFrames - offset));
+      }
+    }
+  }
+  
+  @Override
+  public void processLong(FloatBuffer[] inputs, FloatBuffer[] outputs, int numFrames) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, numFrames);
+      assertBlockSizeIsSet();
+      for (int offset = 0; offset < numFrames; offset += blockSize) {
+        processReplacingUnchecked(inputs, outputs, offset, Math.min(blockSize, numFrames - offset));
+      }
+    }
+  }
+  
+  @Override
+  public ProcessContext newProcessContext(final float[][] inputs, final float[][] outputs, final int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      return new HostProcessContext(blockSize) {
+        @Override
+        protected void processUnchecked() {
+          processReplacingUnchecked(inputs, outputs, blockSize);
+        }
+      };
+    }
+  }
+  
+  @Override
+  public ProcessContext newProcessContext(final FloatBuffer[] inputs, final FloatBuffer[] outputs, final int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertCanProcessReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      return new HostProcessContext(blockSize) {
+        @Override
+        protected void processUnchecked() {
+          processReplacingUnchecked(inputs, outputs, blockSize);
+        }
+      };
+    }
+  }
+  
+  /**
+   * A <code>ProcessContext</code> which remains valid until the plugin changes its input/output
+   * configuration, or its block size is changed.
+   */
+  protected abstract class HostProcessContext extends ProcessContext {
+    
+    private final int configurationGeneration;
+    
+    protected HostProcessContext(int blockSize) {
+      super(blockSize);
+      configurationGeneration = JVstHost20.this.configurationGeneration;
+    }
+    
+    @Override
+    public boolean isValid() {
+      synchronized (processLock) {
+        return configurationGeneration == JVstHost20.this.configurationGeneration;
+      }
+    }
+    
+    @Override
+    public void process() {
+      synchronized (processLock) {
+        if (configurationGeneration != JVstHost20.this.configurationGeneration) {
+          throw new IllegalStateException("The plugin configuration has changed since this ProcessContext was created. Create a new one.");
+        }
+        assertIsTurnedOn();
+        processUnchecked();
+      }
+    }
+    
+    /**
+     * Processes one block. All arguments have already been checked.
+     */
+    protected abstract void processUnchecked();
+  }
+  
+  /**
+   * The plugin may not be given blocks larger than its block size, so a buffer can only be split
+   * into sub-blocks once the block size is known.
+   */
+  protected void assertBlockSizeIsSet() {
+    if (blockSize <= 0) {
+      throw new IllegalStateException("The block size must be set with setBlockSize() in order to perform this operation.");
+    }
+  }
+  
+  protected void assertCanProcessReplacing() {
     if (!canProcessReplacing) {
       throw new IllegalStateException("This plugin does not implement processReplacing().");
     }
+  }
+  
+  /**
+   * Ensures that the given channel arrays can be processed by the plugin in its current configuration.
+   */
+  protected void assertChannels(float[][] inputs, float[][] outputs, int blockSize) {
     if (inputs == null) {
       throw new NullPointerException("The inputs array is null.");
     } else if (inputs.length < numInputs) {
@@ -147,30 +521,18 @@ public class JVstHost20 extends JVstHost2 {
     if (blockSize < 0) {
       throw new IllegalArgumentException("Block size must be non-negative: " + blockSize + " < 0");
     }
-
-    MidiMessage[] messages = queuedMidiMessages.toArray(new MidiMessage[0]);
-    queuedMidiMessages.clear();
-    
-    processReplacing(messages, inputs, outputs, blockSize, vstPluginPtr);
   }
-  protected static native void processReplacing(MidiMessage[] messages, float[][] inputs, float[][] outputs, int blockSize, long pluginPtr);
   
-  @Override
-  public synchronized boolean canReplacing() {
-    return canProcessReplacing;
-  }
-  protected static native int canReplacing(long pluginPtr);
-  
-  @Override
-  public synchronized void process(float[][] inputs, float[][] outputs, int blockSize) {
-    assertNativeComponentIsLoaded();
-    assertIsTurnedOn();
+  /**
+   * Ensures that the given channel arrays can be processed by the plugin in its current configuration.
+   */
+  protected void assertChannels(double[][] inputs, double[][] outputs, int blockSize) {
     if (inputs == null) {
       throw new NullPointerException("The inputs array is null.");
     } else if (inputs.length < numInputs) {
       throw new IllegalArgumentException("Input array length must equal the number of inputs: " + inputs.length + " < " + numInputs);
     } else {
-      for (float[] input : inputs) {
+      for (double[] input : inputs) {
         if (input.length < blockSize) {
           throw new IllegalArgumentException("Input array length must be at least as large as the blockSize: " + input.length + " < " + blockSize);
         }
@@ -181,7 +543,7 @@ public class JVstHost20 extends JVstHost2 {
     } else if (outputs.length < numOutputs) {
       throw new IllegalArgumentException("Output array length must equal the number of outputs: " + outputs.length + " < " + numOutputs);
     } else {
-      for (float[] output : outputs) {
+      for (double[] output : outputs) {
         if (output.length < blockSize) {
           throw new IllegalArgumentException("Output array length must be at least as large as the blockSize: " + output.length + " < " + blockSize);
         }
@@ -190,13 +552,301 @@ public class JVstHost20 extends JVstHost2 {
     if (blockSize < 0) {
       throw new IllegalArgumentException("Block size must be non-negative: " + blockSize + " < 0");
     }
-    
-    MidiMessage[] messages = queuedMidiMessages.toArray(new MidiMessage[0]);
-    queuedMidiMessages.clear();
-    
-    process(messages, inputs, outputs, blockSize, vstPluginPtr);
   }
-  protected static native void process(MidiMessage[] messages, float[][] inputs, float[][] outputs, int blockSize, long pluginPtr);
+  
+  /**
+   * Ensures that the given channel buffers can be processed by the plugin in its current configuration.
+   */
+  protected void assertChannels(FloatBuffer[] inputs, FloatBuffer[] outputs, int blockSize) {
+    if (inputs == null) {
+      throw new NullPointerException("The inputs array is null.");
+    } else if (inputs.length < numInputs) {
+      throw new IllegalArgumentException("Input array length must equal the number of inputs: " + inputs.length + " < " + numInputs);
+    } else {
+      for (int i = 0; i < numInputs; i++) {
+        assertIsDirectChannel(inputs[i], blockSize);
+      }
+    }
+    if (outputs == null) {
+      throw new NullPointerException("The outputs array is null.");
+    } else if (outputs.length < numOutputs) {
+      throw new IllegalArgumentException("Output array length must equal the number of outputs: " + outputs.length + " < " + numOutputs);
+    } else {
+      for (int i = 0; i < numOutputs; i++) {
+        assertIsDirectChannel(outputs[i], blockSize);
+        if (outputs[i].isReadOnly()) {
+          throw new IllegalArgumentException("Output buffers may not be read-only.");
+        }
+      }
+    }
+    if (blockSize < 0) {
+      throw new IllegalArgumentException("Block size must be non-negative: " + blockSize + " < 0");
+    }
+  }
+  
+  /**
+   * Ensures that the given channel buffer may be handed to the plugin without copying.
+   */
+  protected static void assertIsDirectChannel(FloatBuffer channel, int blockSize) {
+    if (channel == null) {
+      throw new NullPointerException("Channel buffers may not be null.");
+    }
+    if (!channel.isDirect() || channel.order() != ByteOrder.nativeOrder()) {
+      throw new IllegalArgumentException("Channel buffers must be direct and in native byte order. Use JVstHost2.allocateFloatChannels.");
+    }
+    if (channel.capacity() < blockSize) {
+      throw new IllegalArgumentException("Channel buffer capacity must be at least as large as the blockSize: " + channel.capacity() + " < " + blockSize);
+    }
+  }
+  
+  @Override
+  public synchronized boolean canReplacing() {
+    return canProcessReplacing;
+  }
+  protected static native int canReplacing(long pluginPtr);
+  
+  @Override
+  public void process(float[][] inputs, float[][] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertChannels(inputs, outputs, blockSize);
+      processUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block with the accumulating <code>process</code>, without checking any of the arguments.
+   */
+  protected void processUnchecked(float[][] inputs, float[][] outputs, int blockSize) {
+    boolean isQuiet = isIdleSkipping && !hasEventsDue(blockSize) && isSilent(inputs, numInputs, 0, blockSize);
+    if (isQuiet && isIdle(blockSize)) {
+      return; // adding silence leaves the outputs unchanged
+    }
+    long startTime = System.nanoTime();
+    int offset = 0;
+    do {
+      int segmentSize = beginSegment(blockSize - offset);
+      process(inputs, outputs, offset, segmentSize, vstPluginPtr);
+      samplePosition += segmentSize;
+      offset += segmentSize;
+    } while (offset < blockSize);
+    processTimeHistogram.record(System.nanoTime() - startTime, blockSize, sampleRate);
+    if (isIdleSkipping) {
+      // the outputs also hold whatever they were accumulated onto, so this check errs towards processing
+      updateIdleState(isQuiet, isQuiet && isSilent(outputs, numOutputs, 0, blockSize), blockSize);
+    }
+  }
+  protected static native void process(float[][] inputs, float[][] outputs, int offset, int blockSize, long pluginPtr);
+  
+  @Override
+  public boolean canDoubleReplacing() {
+    return false;
+  }
+  
+  @Override
+  public void processDouble(double[][] inputs, double[][] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertChannels(inputs, outputs, blockSize);
+      processDoubleUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block of doubles, without checking any of the arguments. The plugin processes single precision
+   * copies of the channels, which are kept between blocks.
+   */
+  protected void processDoubleUnchecked(double[][] inputs, double[][] outputs, int blockSize) {
+    if (scratchInputs == null || scratchInputs.length < numInputs || scratchOutputs.length < numOutputs || scratchLength < blockSize) {
+      scratchLength = Math.max(blockSize, this.blockSize);
+      scratchInputs = new float[numInputs][scratchLength];
+      scratchOutputs = new float[numOutputs][scratchLength];
+    }
+    for (int i = 0; i < numInputs; i++) {
+      doublesToFloats(inputs[i], scratchInputs[i], blockSize);
+    }
+    if (canProcessReplacing) {
+      processReplacingUnchecked(scratchInputs, scratchOutputs, blockSize);
+    } else {
+      for (int i = 0; i < numOutputs; i++) {
+        Arrays.fill(scratchOutputs[i], 0, blockSize, 0f); // process accumulates into the outputs
+      }
+      processUnchecked(scratchInputs, scratchOutputs, blockSize);
+    }
+    for (int i = 0; i < numOutputs; i++) {
+      floatsToDoubles(scratchOutputs[i], outputs[i], blockSize);
+    }
+  }
+  
+  @Override
+  public synchronized int getTailSize() {
+    assertNativeComponentIsLoaded();
+    return getTailSize(vstPluginPtr);
+  }
+  protected static native int getTailSize(long pluginPtr);
+  
+  @Override
+  public synchronized boolean producesSoundInStop() {
+    assertNativeComponentIsLoaded();
+    return (producesSoundInStop(vstPluginPtr) == 0);
+  }
+  /**
+   * Returns the <code>effFlagsNoSoundInStop</code> bit of the plugin flags, which is set if the plugin
+   * does <i>not</i> produce sound when its input is silent.
+   */
+  protected static native int producesSoundInStop(long pluginPtr);
+  
+  @Override
+  public synchronized void setIdleSkipping(boolean isIdleSkipping) {
+    synchronized (processLock) {
+      resetIdleState();
+      idleTailSize = -1L;
+      this.isIdleSkipping = isIdleSkipping;
+    }
+  }
+  
+  @Override
+  public boolean isIdleSkipping() {
+    return isIdleSkipping;
+  }
+  
+  @Override
+  public long getSkippedBlockCount() {
+    return skippedBlockCount;
+  }
+  
+  @Override
+  public ProcessTimeHistogram getProcessTimeHistogram() {
+    return processTimeHistogram;
+  }
+  
+  /**
+   * Returns the number of consecutive quiet samples after which the plugin may be skipped.
+   */
+  protected long computeIdleTailSize() {
+    if (producesSoundInStop(vstPluginPtr) != 0) {
+      return 0L;
+    }
+    int tailSize = getTailSize(vstPluginPtr);
+    if (tailSize == 1) {
+      return 0L; // the plugin has no tail
+    } else if (tailSize > 1) {
+      return tailSize;
+    } else {
+      return (long) (UNKNOWN_TAIL_SECONDS * sampleRate);
+    }
+  }
+  
+  /**
+   * Indicates if any MIDI message or parameter change falls within the next <code>blockSize</code> samples.
+   * Events queued for later do not prevent the plugin from being skipped until they come due.
+   */
+  protected boolean hasEventsDue(int blockSize) {
+    long end = samplePosition + blockSize;
+    return midiEventQueue.hasDueBefore(samplePosition, end) || parameterChangeQueue.hasDueBefore(samplePosition, end);
+  }
+  
+  /**
+   * Called before a quiet block. Returns true, and advances the sample position over the block,
+   * if the block may be skipped.
+   */
+  protected boolean isIdle(int blockSize) {
+    if (idleTailSize < 0L) {
+      idleTailSize = computeIdleTailSize();
+    }
+    if (isOutputSilent && quietSamples >= idleTailSize) {
+      samplePosition += blockSize;
+      skippedBlockCount++;
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Called after a block has been processed while idle skipping is enabled.
+   */
+  protected void updateIdleState(boolean isQuiet, boolean isOutputSilent, int blockSize) {
+    quietSamples = isQuiet ? quietSamples + blockSize : 0L;
+    this.isOutputSilent = isOutputSilent;
+  }
+  
+  protected void resetIdleState() {
+    quietSamples = 0L;
+    isOutputSilent = false;
+  }
+  
+  /*
+   * The peak checks reduce each group of samples to a maximum before testing it, which keeps the inner loop
+   * free of branches so that the JIT compiler can vectorise it. NaN is never considered silent.
+   */
+  protected static boolean isSilent(float[][] channels, int numChannels, int offset, int length) {
+    int end = offset + length;
+    for (int i = 0; i < numChannels; i++) {
+      float[] channel = channels[i];
+      for (int j = offset; j < end; j += 64) {
+        int groupEnd = Math.min(j + 64, end);
+        float peak = 0f;
+        for (int k = j; k < groupEnd; k++) {
+          peak = Math.max(peak, Math.abs(channel[k]));
+        }
+        if (!(peak < SILENCE_THRESHOLD)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  protected static boolean isSilent(FloatBuffer[] channels, int numChannels, int offset, int length) {
+    int end = offset + length;
+    for (int i = 0; i < numChannels; i++) {
+      FloatBuffer channel = channels[i];
+      for (int j = offset; j < end; j += 64) {
+        int groupEnd = Math.min(j + 64, end);
+        float peak = 0f;
+        for (int k = j; k < groupEnd; k++) {
+          peak = Math.max(peak, Math.abs(channel.get(k)));
+        }
+        if (!(peak < SILENCE_THRESHOLD)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  protected static void clearChannels(float[][] channels, int numChannels, int offset, int length) {
+    for (int i = 0; i < numChannels; i++) {
+      Arrays.fill(channels[i], offset, offset + length, 0f);
+    }
+  }
+  
+  protected static void clearChannels(FloatBuffer[] channels, int numChannels, int offset, int length) {
+    int end = offset + length;
+    for (int i = 0; i < numChannels; i++) {
+      FloatBuffer channel = channels[i];
+      for (int j = offset; j < end; j++) {
+        channel.put(j, 0f);
+      }
+    }
+  }
+  
+  /*
+   * The conversion loops are kept free of branches and method calls, so that the JIT compiler can vectorise them.
+   */
+  protected static void doublesToFloats(double[] source, float[] destination, int length) {
+    for (int i = 0; i < length; i++) {
+      destination[i] = (float) source[i];
+    }
+  }
+  
+  protected static void floatsToDoubles(float[] source, double[] destination, int length) {
+    for (int i = 0; i < length; i++) {
+      destination[i] = source[i];
+    }
+  }
   
   @Override
   public synchronized boolean canDo(VstPluginCanDo canDo) {
@@ -215,8 +865,120 @@ public class JVstHost20 extends JVstHost2 {
       System.err.println("Parameter values should be constrained to within [0,1]: " + Float.toString(value));
     }
     setParameter(index, value, vstPluginPtr);
+    parameterChangeCount.incrementAndGet();
+    invalidateParameterDisplay(index);
   }
   protected static native void setParameter(int index, float value, long pluginPtr);
+  
+  @Override
+  public synchronized void getParameters(float[] values) {
+    assertNativeComponentIsLoaded();
+    if (values.length > numParameters) {
+      throw new IndexOutOfBoundsException("Cannot get " + values.length + " parameters. The plugin has only " + numParameters);
+    }
+    synchronized (processLock) { // the native parameter pool is shared with the audio thread
+      getParameters(values, values.length, vstPluginPtr);
+    }
+  }
+  protected static native void getParameters(float[] values, int numParameters, long pluginPtr);
+  
+  @Override
+  public synchronized void setParameters(float[] values) {
+    assertNativeComponentIsLoaded();
+    if (values.length > numParameters) {
+      throw new IndexOutOfBoundsException("Cannot set " + values.length + " parameters. The plugin has only " + numParameters);
+    }
+    for (float value : values) {
+      if (value < 0f || value > 1f) {
+        System.err.println("Parameter values should be constrained to within [0,1]: " + Float.toString(value));
+      }
+    }
+    synchronized (processLock) { // the native parameter pool is shared with the audio thread
+      setParameters(values, values.length, vstPluginPtr);
+    }
+    parameterChangeCount.addAndGet(values.length);
+    for (int i = 0; i < values.length; i++) {
+      invalidateParameterDisplay(i);
+    }
+  }
+  protected static native void setParameters(float[] values, int numParameters, long pluginPtr);
+  
+  @Override
+  public synchronized void setParameters(int[] indices, float[] values) {
+    assertNativeComponentIsLoaded();
+    if (indices.length != values.length) {
+      throw new IllegalArgumentException("There must be one value for each parameter index: " + indices.length + " != " + values.length);
+    }
+    for (int i = 0; i < indices.length; i++) {
+      if (indices[i] < 0 || indices[i] >= numParameters) {
+        throw new IndexOutOfBoundsException("Parameter index, " + indices[i] + ", must be between 0 and " + numParameters);
+      }
+      if (values[i] < 0f || values[i] > 1f) {
+        System.err.println("Parameter values should be constrained to within [0,1]: " + Float.toString(values[i]));
+      }
+    }
+    synchronized (processLock) { // the native parameter pool is shared with the audio thread
+      setParameters(indices, values, indices.length, vstPluginPtr);
+    }
+    parameterChangeCount.addAndGet(indices.length);
+    for (int index : indices) {
+      invalidateParameterDisplay(index);
+    }
+  }
+  
+  @Override
+  public void queueParameterChange(int index, float value) {
+    queueParameterChange(index, value, 0);
+  }
+  
+  @Override
+  public void queueParameterChange(int index, float value, int sampleOffset) {
+    if (sampleOffset < 0) {
+      throw new IllegalArgumentException("The sample offset must be non-negative: " + sampleOffset);
+    }
+    assertParameterChange(index, value);
+    parameterChangeQueue.offer(index, value, sampleOffset, false);
+  }
+  
+  @Override
+  public void queueParameterChangeAt(int index, float value, long sampleTime) {
+    assertParameterChange(index, value);
+    parameterChangeQueue.offer(index, value, sampleTime, true);
+  }
+  
+  protected void assertParameterChange(int index, float value) {
+    if (index < 0 || index >= numParameters) {
+      throw new IndexOutOfBoundsException("Parameter index, " + index + ", must be between 0 and " + numParameters);
+    }
+    if (value < 0f || value > 1f) {
+      System.err.println("Parameter values should be constrained to within [0,1]: " + Float.toString(value));
+    }
+  }
+  
+  @Override
+  public void setSampleAccurateParameterChanges(boolean isSampleAccurate) {
+    isSampleAccurateParameterChanges = isSampleAccurate;
+  }
+  
+  @Override
+  public boolean isSampleAccurateParameterChanges() {
+    return isSampleAccurateParameterChanges;
+  }
+  
+  @Override
+  public int getQueuedParameterChangeCount() {
+    return parameterChangeQueue.size();
+  }
+  
+  @Override
+  public long getParameterQueueDropCount() {
+    return parameterChangeQueue.getDropCount();
+  }
+  
+  @Override
+  public long getParameterChangeCount() {
+    return parameterChangeCount.get();
+  }
 
   @Override
   public synchronized float getParameter(int index) {
@@ -230,21 +992,64 @@ public class JVstHost20 extends JVstHost2 {
   
   @Override
   public synchronized boolean isParameterAutomatable(int index) {
+    return getParameterDescriptor(index).isAutomatable();
+  }
+  protected static native int isParameterAutomatable(int index, long vstPluginPtr);
+  
+  @Override
+  public synchronized ParameterDescriptor getParameterDescriptor(int index) {
     assertNativeComponentIsLoaded();
     if (index < 0 || index >= numParameters) {
       throw new IndexOutOfBoundsException("Parameter index, " + index + ", must be between 0 and " + numParameters);
     }
-    return (isParameterAutomatable(index, vstPluginPtr) != 0);
+    ParameterDescriptor[] descriptors = getParameterDescriptorCache();
+    if (index >= descriptors.length) {
+      // the parameters have changed while building the cache
+      return new ParameterDescriptor(index, getParameterName(index, vstPluginPtr), getParameterLabel(index, vstPluginPtr),
+          isParameterAutomatable(index, vstPluginPtr) != 0);
+    }
+    return descriptors[index];
   }
-  protected static native int isParameterAutomatable(int index, long vstPluginPtr);
   
   @Override
-  public synchronized String getParameterName(int index) {
+  public synchronized ParameterDescriptor[] getParameterDescriptors() {
     assertNativeComponentIsLoaded();
-    if (index < 0 || index >= numParameters) {
-      throw new IndexOutOfBoundsException("Parameter index, " + index + ", must be between 0 and " + numParameters);
+    return getParameterDescriptorCache().clone();
+  }
+  
+  /**
+   * Returns the cached parameter descriptors, reading them from the plugin if the cache has been invalidated.
+   * Must be called while holding the monitor.
+   */
+  protected ParameterDescriptor[] getParameterDescriptorCache() {
+    ParameterDescriptor[] descriptors = parameterDescriptors;
+    if (descriptors == null) {
+      int numParameters = this.numParameters;
+      descriptors = new ParameterDescriptor[numParameters];
+      for (int i = 0; i < numParameters; i++) {
+        descriptors[i] = new ParameterDescriptor(i, getParameterName(i, vstPluginPtr), getParameterLabel(i, vstPluginPtr),
+            isParameterAutomatable(i, vstPluginPtr) != 0);
+      }
+      parameterDisplays = new AtomicReferenceArray<String>(numParameters);
+      parameterDisplayTimes = new long[numParameters];
+      parameterDescriptors = descriptors;
     }
-    return getParameterName(index, vstPluginPtr);
+    return descriptors;
+  }
+  
+  /**
+   * Discards the cached display string of the given parameter. May be called from any thread.
+   */
+  protected void invalidateParameterDisplay(int index) {
+    AtomicReferenceArray<String> displays = parameterDisplays;
+    if (displays != null && index >= 0 && index < displays.length()) {
+      displays.set(index, null);
+    }
+  }
+  
+  @Override
+  public synchronized String getParameterName(int index) {
+    return getParameterDescriptor(index).getName();
   }
   protected static native String getParameterName(int index, long pluginPtr);
   
@@ -254,17 +1059,24 @@ public class JVstHost20 extends JVstHost2 {
     if (index < 0 || index >= numParameters) {
       throw new IndexOutOfBoundsException("Parameter index, " + index + ", must be between 0 and " + numParameters);
     }
-    return getParameterDisplay(index, vstPluginPtr);
+    ParameterDescriptor[] descriptors = getParameterDescriptorCache();
+    if (index >= descriptors.length) {
+      return getParameterDisplay(index, vstPluginPtr); // the parameters have changed while building the cache
+    }
+    long now = System.currentTimeMillis();
+    String display = parameterDisplays.get(index);
+    if (display == null || now - parameterDisplayTimes[index] >= PARAMETER_DISPLAY_CACHE_MILLIS) {
+      display = getParameterDisplay(index, vstPluginPtr);
+      parameterDisplays.set(index, display);
+      parameterDisplayTimes[index] = now;
+    }
+    return display;
   }
   protected static native String getParameterDisplay(int index, long pluginPtr);
   
   @Override
   public synchronized String getParameterLabel(int index) throws IndexOutOfBoundsException {
-    assertNativeComponentIsLoaded();
-    if (index < 0 || index >= numParameters) {
-      throw new IndexOutOfBoundsException("Parameter index, " + index + ", must be between 0 and " + numParameters);
-    }
-    return getParameterLabel(index, vstPluginPtr);
+    return getParameterDescriptor(index).getLabel();
   }
   protected static native String getParameterLabel(int index, long pluginPtr);
   
@@ -319,13 +1131,15 @@ public class JVstHost20 extends JVstHost2 {
   
   @Override
   public synchronized void setSampleRate(float sampleRate) {
-    assertIsTurnedOff();
-    assertNativeComponentIsLoaded();
-    if (sampleRate <= 0f) {
-      throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+    synchronized (processLock) {
+      assertIsTurnedOff();
+      assertNativeComponentIsLoaded();
+      if (sampleRate <= 0f) {
+        throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+      }
+      this.sampleRate = sampleRate;
+      setSampleRate(sampleRate, vstPluginPtr);
     }
-    this.sampleRate = sampleRate;
-    setSampleRate(sampleRate, vstPluginPtr);
   }
   protected static native void setSampleRate(float sampleRate, long pluginPtr);
   
@@ -343,13 +1157,16 @@ public class JVstHost20 extends JVstHost2 {
   
   @Override
   public synchronized void setBlockSize(int blockSize) throws IllegalArgumentException {
-    assertIsTurnedOff();
-    assertNativeComponentIsLoaded();
-    if (blockSize <= 0) {
-      throw new IllegalArgumentException("Blocks size must be positive: " + blockSize);
+    synchronized (processLock) {
+      assertIsTurnedOff();
+      assertNativeComponentIsLoaded();
+      if (blockSize <= 0) {
+        throw new IllegalArgumentException("Blocks size must be positive: " + blockSize);
+      }
+      this.blockSize = blockSize;
+      configurationGeneration++;
+      setBlockSize(blockSize, vstPluginPtr);
     }
-    this.blockSize = blockSize;
-    setBlockSize(blockSize, vstPluginPtr);
   }
   protected static native void setBlockSize(int blockSize, long pluginPtr);
   
@@ -473,6 +1290,7 @@ public class JVstHost20 extends JVstHost2 {
       throw new IndexOutOfBoundsException("The program index must be in [0, " + numPrograms + "): " + Integer.toString(index));
     }
     setProgram(index, vstPluginPtr);
+    parameterDescriptors = null; // some plugins rename their parameters with the program
   }
   protected static native void setProgram(int index, long pluginPtr);
   
@@ -517,22 +1335,32 @@ public class JVstHost20 extends JVstHost2 {
   
   @Override
   public synchronized void turnOn() {
-    if (isTurnedOff) {
-      resume(vstPluginPtr);
-      isTurnedOff = false;
+    synchronized (processLock) {
+      if (isTurnedOff) {
+        resume(vstPluginPtr);
+        resetIdleState();
+        isTurnedOff = false;
+      }
     }
   }
   protected static native void resume(long pluginPtr);
   
   @Override
   public synchronized void turnOff() {
-    if (!isTurnedOff) {
-      suspend(vstPluginPtr);
-      isTurnedOff = true;
+    synchronized (processLock) {
+      if (!isTurnedOff) {
+        suspend(vstPluginPtr);
+        isTurnedOff = true;
+      }
     }
   }
   protected static native void suspend(long pluginPtr);
   
+  @Override
+  public boolean isTurnedOn() {
+    return !isTurnedOff;
+  }
+  
   @Override
   public synchronized void setBankChunk(byte[] chunkData) {
     assertNativeComponentIsLoaded();
@@ -540,6 +1368,7 @@ public class JVstHost20 extends JVstHost2 {
       throw new NullPointerException("Chunk data cannot be null.");
     }
     setChunk(0, chunkData, vstPluginPtr);
+    parameterDescriptors = null;
   }
   
   @Override
@@ -549,6 +1378,7 @@ public class JVstHost20 extends JVstHost2 {
       throw new NullPointerException("Chunk data cannot be null.");
     }
     setChunk(1, chunkData, vstPluginPtr);
+    parameterDescriptors = null;
   }
   protected static native void setChunk(int bankOrProgram, byte[] chunkData, long pluginPtr);
   
@@ -569,6 +1399,12 @@ public class JVstHost20 extends JVstHost2 {
   public synchronized void setBypass(boolean bypass) {
     assertNativeComponentIsLoaded();
     setBypass(bypass, vstPluginPtr);
+    isBypassed = bypass;
+  }
+  
+  @Override
+  public boolean isBypassed() {
+    return isBypassed;
   }
   protected static native void setBypass(boolean bypass, long pluginPtr);
   
@@ -608,7 +1444,7 @@ public class JVstHost20 extends JVstHost2 {
   /*
    * Native plugin callbacks.
    */
-  protected synchronized void audioMasterProcessMidiEvents(int command, int channel, int data1, int data2) {
+  protected void audioMasterProcessMidiEvents(int command, int channel, int data1, int data2) {
     try {
       ShortMessage message = new ShortMessage();
       message.setMessage(command, channel, data1, data2);
@@ -624,28 +1460,37 @@ public class JVstHost20 extends JVstHost2 {
     }
   }
   
-  protected synchronized void audioMasterAutomate(int index, float value) {
+  protected void audioMasterAutomate(int index, float value) {
+    parameterChangeCount.incrementAndGet();
+    invalidateParameterDisplay(index);
     for (JVstHostListener listener : hostListeners) {
       listener.onAudioMasterAutomate(this, index, value);
     }
   }
   
-  protected synchronized void audioMasterIoChanged(int numInputs, int numOutputs, int initialDelay, int numParameters) {
-    this.numInputs = numInputs; // update cached vars
-    this.numOutputs = numOutputs;
-    this.numParameters = numParameters;
+  protected void audioMasterIoChanged(int numInputs, int numOutputs, int initialDelay, int numParameters) {
+    synchronized (processLock) {
+      this.numInputs = numInputs; // update cached vars
+      this.numOutputs = numOutputs;
+      this.numParameters = numParameters;
+      parameterDescriptors = null; // after numParameters, so that a reader which sees the new count also rebuilds the cache
+      configurationGeneration++; // any ProcessContext may now have the wrong number of channels
+      idleTailSize = -1L; // the plugin may also report a new tail
+      resetIdleState();
+    }
+    // listeners are notified after the processLock has been released, so that they may call back into the host
     for (JVstHostListener listener : hostListeners) {
       listener.onAudioMasterIoChanged(this, numInputs, numOutputs, initialDelay, numParameters);
     }
   }
   
-  protected synchronized void audioMasterBeginEdit(int index) {
+  protected void audioMasterBeginEdit(int index) {
     for (JVstHostListener listener : hostListeners) {
       listener.onAudioMasterBeginEdit(this, index);
     }
   }
   
-  protected synchronized void audioMasterEndEdit(int index) {
+  protected void audioMasterEndEdit(int index) {
     for (JVstHostListener listener : hostListeners) {
       listener.onAudioMasterEndEdit(this, index);
     }
@@ -655,14 +1500,12 @@ public class JVstHost20 extends JVstHost2 {
    * Listener manager methods.
    */
   @Override
-  public synchronized void addJVstHostListener(JVstHostListener listener) {
-    if (!hostListeners.contains(listener)) {
-      hostListeners.add(listener);
-    }
+  public void addJVstHostListener(JVstHostListener listener) {
+    hostListeners.addIfAbsent(listener);
   }
   
   @Override
-  public synchronized void removeJVstHostListener(JVstHostListener listener) {
+  public void removeJVstHostListener(JVstHostListener listener) {
     hostListeners.remove(listener);
   }
   
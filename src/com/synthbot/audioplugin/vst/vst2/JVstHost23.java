@@ -38,19 +38,24 @@ public class JVstHost23 extends JVstHost22 {
   
   @Override
   public synchronized void turnOn() {
-    if (isTurnedOff) {
-      resume(vstPluginPtr);
-      startProcess(vstPluginPtr);
-      isTurnedOff = false;
+    synchronized (processLock) {
+      if (isTurnedOff) {
+        resume(vstPluginPtr);
+        startProcess(vstPluginPtr);
+        resetIdleState();
+        isTurnedOff = false;
+      }
     }
   }
   
   @Override
   public synchronized void turnOff() {
-    if (!isTurnedOff) {
-      stopProcess(vstPluginPtr);
-      suspend(vstPluginPtr);
-      isTurnedOff = true;
+    synchronized (processLock) {
+      if (!isTurnedOff) {
+        stopProcess(vstPluginPtr);
+        suspend(vstPluginPtr);
+        isTurnedOff = true;
+      }
     }
   }
   
@@ -24,8 +24,9 @@ package com.synthbot.audioplugin.vst.vst2;
 import com.synthbot.audioplugin.vst.VstVersion;
 
 import java.io.File;
-
-import javax.sound.midi.MidiMessage;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 
 public class JVstHost24 extends JVstHost23 {
   
@@ -52,21 +53,197 @@ public class JVstHost24 extends JVstHost23 {
    * @throws OutOfMemoryError  Thrown in the rare case that native input and output arrays cannot be allocated by the JVM.
    * @throws NullPointerException  Thrown if the input or output arrays are null.
    */
-  public synchronized void processDoubleReplacing(double[][] inputs, double[][] outputs, int blockSize) {
-    assertNativeComponentIsLoaded();
-    assertIsTurnedOn();
+  public void processDoubleReplacing(double[][] inputs, double[][] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanDoubleReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      processDoubleReplacingUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block with <code>processDoubleReplacing</code>, without checking any of the arguments.
+   */
+  protected void processDoubleReplacingUnchecked(double[][] inputs, double[][] outputs, int blockSize) {
+    boolean isQuiet = isIdleSkipping && !hasEventsDue(blockSize) && isSilent(inputs, numInputs, blockSize);
+    if (isQuiet && isIdle(blockSize)) {
+      for (int i = 0; i < numOutputs; i++) {
+        Arrays.fill(outputs[i], 0, blockSize, 0.0);
+      }
+      return;
+    }
+    long startTime = System.nanoTime();
+    int offset = 0;
+    do {
+      int segmentSize = beginSegment(blockSize - offset);
+      processDoubleReplacing(inputs, outputs, offset, segmentSize, vstPluginPtr);
+      samplePosition += segmentSize;
+      offset += segmentSize;
+    } while (offset < blockSize);
+    processTimeHistogram.record(System.nanoTime() - startTime, blockSize, sampleRate);
+    if (isIdleSkipping) {
+      updateIdleState(isQuiet, isQuiet && isSilent(outputs, numOutputs, blockSize), blockSize);
+    }
+  }
+  protected static native void processDoubleReplacing(double[][] inputs, double[][] outputs, int offset, int blockSize, long pluginPtr);
+  
+  /**
+   * Generate audio output from the plugin, replacing the contents of the output buffers. Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin.
+   * The buffers must be direct and in native byte order, such as those returned by <code>allocateDoubleChannels</code>.
+   * The plugin reads from and writes to the buffer memory in place, so no audio data is copied across the native boundary.
+   * @param inputs  The audio input to the plugin is read from these buffers.
+   * @param outputs  The output of the plugin will be placed into these buffers.
+   * @param blockSize  Number of samples to read from the input and output buffers. May not be larger than the capacity of the buffers.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds, or if a buffer is not direct or not in native byte order.
+   * @throws IllegalStateException  Thrown if the plugin does not implement <code>processDoubleReplacing</code>. Check <code>canDoubleReplacing</code>.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public void processDoubleReplacing(DoubleBuffer[] inputs, DoubleBuffer[] outputs, int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertIsTurnedOn();
+      assertCanDoubleReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      processDoubleReplacingUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  /**
+   * Processes a block of direct buffers with <code>processDoubleReplacing</code>, without checking any of the arguments.
+   */
+  protected void processDoubleReplacingUnchecked(DoubleBuffer[] inputs, DoubleBuffer[] outputs, int blockSize) {
+    boolean isQuiet = isIdleSkipping && !hasEventsDue(blockSize) && isSilent(inputs, numInputs, blockSize);
+    if (isQuiet && isIdle(blockSize)) {
+      for (int i = 0; i < numOutputs; i++) {
+        for (int j = 0; j < blockSize; j++) {
+          outputs[i].put(j, 0.0);
+        }
+      }
+      return;
+    }
+    long startTime = System.nanoTime();
+    int offset = 0;
+    do {
+      int segmentSize = beginSegment(blockSize - offset);
+      processDoubleReplacingDirect(inputs, outputs, offset, segmentSize, vstPluginPtr);
+      samplePosition += segmentSize;
+      offset += segmentSize;
+    } while (offset < blockSize);
+    processTimeHistogram.record(System.nanoTime() - startTime, blockSize, sampleRate);
+    if (isIdleSkipping) {
+      updateIdleState(isQuiet, isQuiet && isSilent(outputs, numOutputs, blockSize), blockSize);
+    }
+  }
+  protected static native void processDoubleReplacingDirect(DoubleBuffer[] inputs, DoubleBuffer[] outputs, int offset, int blockSize, long pluginPtr);
+  
+  /**
+   * Creates a <code>ProcessContext</code> which processes the given channels with <code>processDoubleReplacing</code>.
+   * The channels are checked once, here, instead of on every block.
+   * @param inputs  The audio input to the plugin is read from this array.
+   * @param outputs  The output of the plugin will be placed into this array.
+   * @param blockSize  Number of samples to process per block. May not be larger than the length of the arrays.
+   * @return  A context whose <code>process</code> method processes one block.
+   * @throws IllegalArgumentException  Thrown if any of the arguments do not lie within their natural bounds.
+   * @throws IllegalStateException  Thrown if the plugin does not implement <code>processDoubleReplacing</code>. Check <code>canDoubleReplacing</code>.
+   * @throws NullPointerException  Thrown if the input or output arrays are null.
+   */
+  public ProcessContext newDoubleProcessContext(final double[][] inputs, final double[][] outputs, final int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertCanDoubleReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      return new HostProcessContext(blockSize) {
+        @Override
+        protected void processUnchecked() {
+          processDoubleReplacingUnchecked(inputs, outputs, blockSize);
+        }
+      };
+    }
+  }
+  
+  /**
+   * Creates a <code>ProcessContext</code> which processes the given direct buffers with <code>processDoubleReplacing</code>.
+   * @see #newDoubleProcessContext(double[][], double[][], int)
+   */
+  public ProcessContext newDoubleProcessContext(final DoubleBuffer[] inputs, final DoubleBuffer[] outputs, final int blockSize) {
+    synchronized (processLock) {
+      assertNativeComponentIsLoaded();
+      assertCanDoubleReplacing();
+      assertChannels(inputs, outputs, blockSize);
+      return new HostProcessContext(blockSize) {
+        @Override
+        protected void processUnchecked() {
+          processDoubleReplacingUnchecked(inputs, outputs, blockSize);
+        }
+      };
+    }
+  }
+  
+  /**
+   * Processes doubles natively if the plugin supports it, and otherwise via the single precision scratch buffers.
+   */
+  @Override
+  protected void processDoubleUnchecked(double[][] inputs, double[][] outputs, int blockSize) {
+    if (canDoubleReplacing) {
+      processDoubleReplacingUnchecked(inputs, outputs, blockSize);
+    } else {
+      super.processDoubleUnchecked(inputs, outputs, blockSize);
+    }
+  }
+  
+  protected static boolean isSilent(double[][] channels, int numChannels, int length) {
+    for (int i = 0; i < numChannels; i++) {
+      double[] channel = channels[i];
+      for (int j = 0; j < length; j += 64) {
+        int groupEnd = Math.min(j + 64, length);
+        double peak = 0.0;
+        for (int k = j; k < groupEnd; k++) {
+          peak = Math.max(peak, Math.abs(channel[k]));
+        }
+        if (!(peak < SILENCE_THRESHOLD)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  protected static boolean isSilent(DoubleBuffer[] channels, int numChannels, int length) {
+    for (int i = 0; i < numChannels; i++) {
+      DoubleBuffer channel = channels[i];
+      for (int j = 0; j < length; j += 64) {
+        int groupEnd = Math.min(j + 64, length);
+        double peak = 0.0;
+        for (int k = j; k < groupEnd; k++) {
+          peak = Math.max(peak, Math.abs(channel.get(k)));
+        }
+        if (!(peak < SILENCE_THRESHOLD)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  protected void assertCanDoubleReplacing() {
     if (!canDoubleReplacing) {
       throw new IllegalStateException("This plugin cannot do processDoubleReplacing().");
     }
+  }
+  
+  /**
+   * Ensures that the given channel buffers can be processed by the plugin in its current configuration.
+   */
+  protected void assertChannels(DoubleBuffer[] inputs, DoubleBuffer[] outputs, int blockSize) {
     if (inputs == null) {
       throw new NullPointerException("The inputs array is null.");
     } else if (inputs.length < numInputs) {
       throw new IllegalArgumentException("Input array length must equal the number of inputs: " + inputs.length + " < " + numInputs);
     } else {
-      for (double[] input : inputs) {
-        if (input.length < blockSize) {
-          throw new IllegalArgumentException("Input array length must be at least as large as the blockSize: " + input.length + " != " + blockSize);
-        }
+      for (int i = 0; i < numInputs; i++) {
+        assertIsDirectChannel(inputs[i], blockSize);
       }
     }
     if (outputs == null) {
@@ -74,27 +251,38 @@ public class JVstHost24 extends JVstHost23 {
     } else if (outputs.length < numOutputs) {
       throw new IllegalArgumentException("Output array length must equal the number of outputs: " + outputs.length + " < " + numOutputs);
     } else {
-      for (double[] output : outputs) {
-        if (output.length < blockSize) {
-          throw new IllegalArgumentException("Output array length must be at least as large as the blockSize: " + output.length + " != " + blockSize);
+      for (int i = 0; i < numOutputs; i++) {
+        assertIsDirectChannel(outputs[i], blockSize);
+        if (outputs[i].isReadOnly()) {
+          throw new IllegalArgumentException("Output buffers may not be read-only.");
         }
       }
     }
     if (blockSize < 0) {
       throw new IllegalArgumentException("Block size must be non-negative: " + blockSize + " < 0");
     }
-    
-    MidiMessage[] messages = queuedMidiMessages.toArray(new MidiMessage[0]);
-    queuedMidiMessages.clear();
-    
-    processDoubleReplacing(messages, inputs, outputs, blockSize, vstPluginPtr);
   }
-  protected static native void processDoubleReplacing(MidiMessage[] messages, double[][] inputs, double[][] outputs, int blockSize, long pluginPtr);
+  
+  /**
+   * Ensures that the given channel buffer may be handed to the plugin without copying.
+   */
+  protected static void assertIsDirectChannel(DoubleBuffer channel, int blockSize) {
+    if (channel == null) {
+      throw new NullPointerException("Channel buffers may not be null.");
+    }
+    if (!channel.isDirect() || channel.order() != ByteOrder.nativeOrder()) {
+      throw new IllegalArgumentException("Channel buffers must be direct and in native byte order. Use JVstHost2.allocateDoubleChannels.");
+    }
+    if (channel.capacity() < blockSize) {
+      throw new IllegalArgumentException("Channel buffer capacity must be at least as large as the blockSize: " + channel.capacity() + " < " + blockSize);
+    }
+  }
   
   /**
    * Determines if this plugin supports <code>processDoubleReplacing</code>.
    * @return  True if this plugin supports <code>processDoubleReplacing</code>. False otherwise.
    */
+  @Override
   public synchronized boolean canDoubleReplacing() {
     return canDoubleReplacing;
   }
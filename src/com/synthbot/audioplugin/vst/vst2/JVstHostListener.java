@@ -45,7 +45,10 @@ public interface JVstHostListener {
   public void onAudioMasterProcessMidiEvents(JVstHost2 vst, ShortMessage message);
   
   /**
-   * Called when the plugin changes it input/output configuration.
+   * Called when the plugin changes it input/output configuration. The host has already updated its
+   * cached channel and parameter counts. If the plugin changes its configuration from within
+   * <code>processReplacing</code>, this is called on the audio thread while processing is still under way,
+   * so a listener must not block waiting for another thread which calls into the same host.
    * @param vst The JVstHost2 which is generating this callback
    * @param numInputs
    * @param numOutputs
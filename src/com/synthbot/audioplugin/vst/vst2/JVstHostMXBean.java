@@ -0,0 +1,102 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.synthbot.audioplugin.vst.vst2;
+
+/**
+ * The management interface of a <code>JVstHost2</code>, as registered with JMX by <code>JVstHostMonitor</code>.
+ * Reading an attribute never blocks the audio thread. Process times are in microseconds.
+ */
+public interface JVstHostMXBean {
+  
+  public String getEffectName();
+  
+  public String getVendorName();
+  
+  public String getProductString();
+  
+  public int getPluginVersion();
+  
+  public String getVstVersion();
+  
+  public String getUniqueId();
+  
+  public String getPluginPath();
+  
+  public float getSampleRate();
+  
+  public int getBlockSize();
+  
+  public boolean isTurnedOn();
+  
+  public boolean isBypassed();
+  
+  public int getQueuedMidiMessageCount();
+  
+  public long getMidiQueueDropCount();
+  
+  public int getQueuedParameterChangeCount();
+  
+  public long getParameterQueueDropCount();
+  
+  public long getParameterChangeCount();
+  
+  /**
+   * Returns the number of parameter changes applied per second since this attribute was last read.
+   */
+  public double getParameterChangeRate();
+  
+  public long getProcessedBlockCount();
+  
+  public long getSkippedBlockCount();
+  
+  public double getProcessTimeMean();
+  
+  public double getProcessTimeMedian();
+  
+  public double getProcessTime99thPercentile();
+  
+  public double getProcessTime999thPercentile();
+  
+  public double getProcessTimeMax();
+  
+  /**
+   * Returns the mean processing time as a fraction of the block duration.
+   */
+  public double getDspLoad();
+  
+  public double getMaxDspLoad();
+  
+  /**
+   * Returns the number of blocks which took longer to process than their duration, and so would cause an xrun.
+   */
+  public long getOverloadCount();
+  
+  public void resetProcessTimes();
+  
+  public void setBypass(boolean bypass);
+  
+  public void turnOff();
+  
+  /**
+   * Returns a copy of the current bank chunk, which may be used to restore the state of the plugin.
+   */
+  public byte[] snapshotBankChunk();
+}
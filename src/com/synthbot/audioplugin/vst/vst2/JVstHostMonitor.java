@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes a live <code>JVstHost2</code> to JMX tools such as JConsole, as a <code>JVstHostMXBean</code>. Plugins
+ * are only registered on request, with <code>register</code>, or for every new instance if the system property
+ * <code>jvsthost.jmx</code> is <code>true</code>. A plugin is unregistered when it is unloaded. The monitor
+ * holds only a weak reference to its plugin, so that registration does not prevent the plugin from being finalized.
+ * Nothing is recorded for JMX alone; the attributes read the statistics which every plugin keeps anyway.
+ */
+public class JVstHostMonitor implements JVstHostMXBean {
+  
+  /** If this system property is true, every new <code>JVstHost2</code> is registered. */
+  public static final String REGISTER_PROPERTY = "jvsthost.jmx";
+  
+  public static final String DOMAIN = "com.synthbot.audioplugin.vst.vst2";
+  
+  // keyed by the native pointer of each plugin, so that no strong reference is kept
+  private static final Map<Long, ObjectName> registeredNames = new ConcurrentHashMap<Long, ObjectName>();
+  
+  private final WeakReference<JVstHost2> vstReference;
+  private long lastChangeCount; // for the parameter change rate
+  private long lastChangeNanos;
+  
+  protected JVstHostMonitor(JVstHost2 vst) {
+    vstReference = new WeakReference<JVstHost2>(vst);
+    lastChangeCount = vst.getParameterChangeCount();
+    lastChangeNanos = System.nanoTime();
+  }
+  
+  /**
+   * Registers the given plugin with the platform MBean server. Has no effect if it is already registered.
+   * @return  The name under which the plugin is registered.
+   * @throws IllegalStateException  Thrown if the plugin cannot be registered.
+   */
+  public static ObjectName register(JVstHost2 vst) {
+    if (vst == null) {
+      throw new NullPointerException("The plugin to register may not be null.");
+    }
+    vst.assertNativeComponentIsLoaded();
+    synchronized (registeredNames) {
+      ObjectName name = registeredNames.get(vst.vstPluginPtr);
+      if (name == null) {
+        name = getObjectName(vst);
+        try {
+          ManagementFactory.getPlatformMBeanServer().registerMBean(new JVstHostMonitor(vst), name);
+        } catch (JMException jme) {
+          throw new IllegalStateException("The plugin could not be registered as " + name, jme);
+        }
+        registeredNames.put(vst.vstPluginPtr, name);
+      }
+      return name;
+    }
+  }
+  
+  /**
+   * Unregisters the given plugin. Has no effect if it is not registered.
+   */
+  public static void unregister(JVstHost2 vst) {
+    if (registeredNames.isEmpty()) {
+      return; // the usual case, as registration is opt-in
+    }
+    synchronized (registeredNames) {
+      ObjectName name = registeredNames.remove(vst.vstPluginPtr);
+      if (name != null) {
+        unregister(name);
+      }
+    }
+  }
+  
+  private static void unregister(ObjectName name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (InstanceNotFoundException infe) {
+      // already unregistered, for instance by a JMX client
+    } catch (JMException jme) {
+      throw new IllegalStateException("The plugin could not be unregistered from " + name, jme);
+    }
+  }
+  
+  /**
+   * Indicates if the given plugin is registered.
+   */
+  public static boolean isRegistered(JVstHost2 vst) {
+    return registeredNames.containsKey(vst.vstPluginPtr);
+  }
+  
+  /**
+   * Returns the name under which the given plugin is, or would be, registered. The name includes the address
+   * of the native plugin, so that several instances of the same plugin may be registered.
+   */
+  public static ObjectName getObjectName(JVstHost2 vst) {
+    try {
+      return new ObjectName(DOMAIN + ":type=JVstHost2,name=" + ObjectName.quote(vst.getEffectName()) +
+          ",id=0x" + Long.toHexString(vst.vstPluginPtr));
+    } catch (MalformedObjectNameException mone) {
+      throw new IllegalStateException(mone); // cannot happen, as the name is quoted
+    }
+  }
+  
+  /**
+   * Returns the plugin, or throws an exception if it has been garbage collected. A collected plugin
+   * unregisters itself when it is finalized.
+   */
+  protected JVstHost2 getVst() {
+    JVstHost2 vst = vstReference.get();
+    if (vst == null) {
+      throw new IllegalStateException("The plugin has been garbage collected.");
+    }
+    return vst;
+  }
+  
+  public String getEffectName() {
+    return getVst().getEffectName();
+  }
+  
+  public String getVendorName() {
+    return getVst().getVendorName();
+  }
+  
+  public String getProductString() {
+    return getVst().getProductString();
+  }
+  
+  public int getPluginVersion() {
+    return getVst().getPluginVersion();
+  }
+  
+  public String getVstVersion() {
+    return getVst().getVstVersion().toString();
+  }
+  
+  public String getUniqueId() {
+    return getVst().getUniqueId();
+  }
+  
+  public String getPluginPath() {
+    return getVst().getPluginPath();
+  }
+  
+  public float getSampleRate() {
+    return getVst().getSampleRate();
+  }
+  
+  public int getBlockSize() {
+    return getVst().getBlockSize();
+  }
+  
+  public boolean isTurnedOn() {
+    return getVst().isTurnedOn();
+  }
+  
+  public boolean isBypassed() {
+    return getVst().isBypassed();
+  }
+  
+  public int getQueuedMidiMessageCount() {
+    return getVst().getQueuedMidiMessageCount();
+  }
+  
+  public long getMidiQueueDropCount() {
+    return getVst().getMidiQueueDropCount();
+  }
+  
+  public int getQueuedParameterChangeCount() {
+    return getVst().getQueuedParameterChangeCount();
+  }
+  
+  public long getParameterQueueDropCount() {
+    return getVst().getParameterQueueDropCount();
+  }
+  
+  public long getParameterChangeCount() {
+    return getVst().getParameterChangeCount();
+  }
+  
+  public synchronized double getParameterChangeRate() {
+    long changeCount = getVst().getParameterChangeCount();
+    long now = System.nanoTime();
+    double rate = (now > lastChangeNanos) ? (changeCount - lastChangeCount) * 1.0e9 / (now - lastChangeNanos) : 0.0;
+    lastChangeCount = changeCount;
+    lastChangeNanos = now;
+    return rate;
+  }
+  
+  public long getProcessedBlockCount() {
+    return getVst().getProcessTimeHistogram().getCount();
+  }
+  
+  public long getSkippedBlockCount() {
+    return getVst().getSkippedBlockCount();
+  }
+  
+  public double getProcessTimeMean() {
+    return getVst().getProcessTimeHistogram().getMeanNanos() / 1000.0;
+  }
+  
+  public double getProcessTimeMedian() {
+    return getVst().getProcessTimeHistogram().getPercentileNanos(50.0) / 1000.0;
+  }
+  
+  public double getProcessTime99thPercentile() {
+    return getVst().getProcessTimeHistogram().getPercentileNanos(99.0) / 1000.0;
+  }
+  
+  public double getProcessTime999thPercentile() {
+    return getVst().getProcessTimeHistogram().getPercentileNanos(99.9) / 1000.0;
+  }
+  
+  public double getProcessTimeMax() {
+    return getVst().getProcessTimeHistogram().getMaxNanos() / 1000.0;
+  }
+  
+  public double getDspLoad() {
+    return getVst().getProcessTimeHistogram().getDspLoad();
+  }
+  
+  public double getMaxDspLoad() {
+    return getVst().getProcessTimeHistogram().getMaxDspLoad();
+  }
+  
+  public long getOverloadCount() {
+    return getVst().getProcessTimeHistogram().getOverloadCount();
+  }
+  
+  public void resetProcessTimes() {
+    getVst().getProcessTimeHistogram().reset();
+  }
+  
+  public void setBypass(boolean bypass) {
+    getVst().setBypass(bypass);
+  }
+  
+  public void turnOff() {
+    getVst().turnOff();
+  }
+  
+  public byte[] snapshotBankChunk() {
+    return getVst().getBankChunk();
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import com.synthbot.audioplugin.vst.JVstLoadException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * JVstHostPool keeps loaded, turned on plugin instances ready for reuse, so that request-driven
+ * workloads do not pay the cost of <code>JVstHost2.newInstance</code> on every job. Instances are
+ * keyed by plugin file, sample rate and block size. <code>borrow</code> returns an idle instance
+ * with a matching key if there is one, and otherwise loads a new one. <code>release</code> returns
+ * an instance to the pool after restoring the state which it had when it was loaded: the cached bank
+ * chunk if the plugin supports chunks, or otherwise its program and parameter vector.
+ * 
+ * The pool holds at most <code>maxSize</code> instances, borrowed or idle. If the pool is full, the
+ * least recently used idle instance of another key is unloaded to make room, and if there is none,
+ * <code>borrow</code> waits until an instance is released. Instances which stay idle for longer than
+ * the idle timeout are unloaded by a background timer.
+ * 
+ * Borrowers must remove any <code>JVstHostListener</code>s which they add before releasing an instance.
+ * All methods are thread-safe.
+ */
+public class JVstHostPool {
+  
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+  private final Map<Key, LinkedList<PooledInstance>> idleInstances;
+  private final Map<JVstHost2, PooledInstance> borrowedInstances;
+  private final Timer evictionTimer;
+  private int size; // the number of idle, borrowed and loading instances
+  private boolean isClosed;
+  
+  /**
+   * @param maxSize  The maximum number of instances, idle or borrowed, held by the pool.
+   * @param idleTimeoutMillis  Instances idle for longer than this are unloaded.
+   * @throws IllegalArgumentException  Thrown if either argument is not positive.
+   */
+  public JVstHostPool(int maxSize, long idleTimeoutMillis) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("The maximum size must be positive: " + maxSize);
+    }
+    if (idleTimeoutMillis <= 0L) {
+      throw new IllegalArgumentException("The idle timeout must be positive: " + idleTimeoutMillis);
+    }
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    idleInstances = new HashMap<Key, LinkedList<PooledInstance>>();
+    borrowedInstances = new IdentityHashMap<JVstHost2, PooledInstance>();
+    size = 0;
+    isClosed = false;
+    
+    long period = Math.max(1L, idleTimeoutMillis / 2);
+    evictionTimer = new Timer("JVstHostPool eviction", true);
+    evictionTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        evictIdle();
+      }
+    }, period, period);
+  }
+  
+  /**
+   * Borrows a turned on instance of the given plugin, loading it if no matching instance is idle.
+   * @param pluginFile  The location of the native plugin library.
+   * @param sampleRate  The sample rate at which the plugin should operate.
+   * @param blockSize  The maximum block size of the plugin.
+   * @return  A plugin instance, which must be passed to <code>release</code> when it is no longer needed.
+   * @throws FileNotFoundException  Thrown if the given VST File does not exist.
+   * @throws IllegalStateException  Thrown if the pool has been closed.
+   * @throws InterruptedException  Thrown if the thread is interrupted while waiting for a full pool.
+   * @throws JVstLoadException  Thrown if there are any errors while loading the native VST.
+   */
+  public JVstHost2 borrow(File pluginFile, float sampleRate, int blockSize)
+      throws FileNotFoundException, JVstLoadException, InterruptedException {
+    Key key = new Key(pluginFile, sampleRate, blockSize);
+    PooledInstance evicted = null;
+    synchronized (this) {
+      while (true) {
+        assertIsOpen();
+        LinkedList<PooledInstance> idle = idleInstances.get(key);
+        if (idle != null && !idle.isEmpty()) {
+          PooledInstance instance = idle.removeFirst(); // the most recently used instance is the most likely to be warm
+          borrowedInstances.put(instance.vst, instance);
+          return instance.vst;
+        }
+        if (size < maxSize) {
+          size++; // reserve a place, and load the plugin outside of the lock
+          break;
+        }
+        evicted = removeLeastRecentlyUsed();
+        if (evicted != null) {
+          size++; // take over the place of the evicted instance, which is unloaded outside of the lock
+          break;
+        }
+        wait();
+      }
+    }
+    
+    PooledInstance instance;
+    try {
+      if (evicted != null) {
+        unload(evicted); // before loading, so that the pool never holds more than maxSize instances
+      }
+      instance = new PooledInstance(key, JVstHost2.newInstance(key.file, sampleRate, blockSize));
+    } catch (FileNotFoundException fnfe) {
+      cancelReservation();
+      throw fnfe;
+    } catch (JVstLoadException jvle) {
+      cancelReservation();
+      throw jvle;
+    } catch (RuntimeException re) {
+      cancelReservation();
+      throw re;
+    }
+    synchronized (this) {
+      borrowedInstances.put(instance.vst, instance);
+    }
+    return instance.vst;
+  }
+  
+  /**
+   * Restores the given instance to the state in which it was loaded, and returns it to the pool.
+   * @throws IllegalArgumentException  Thrown if the instance was not borrowed from this pool.
+   */
+  public void release(JVstHost2 vst) {
+    PooledInstance instance;
+    synchronized (this) {
+      instance = borrowedInstances.get(vst);
+      if (instance == null) {
+        throw new IllegalArgumentException("The plugin was not borrowed from this pool: " + vst);
+      }
+    }
+    
+    boolean isReset = false;
+    boolean isRemoved = false;
+    try {
+      instance.reset(); // outside of the lock, as it calls into the plugin
+      isReset = true;
+    } finally {
+      synchronized (this) {
+        borrowedInstances.remove(vst);
+        if (isReset && !isClosed) {
+          instance.lastReleasedMillis = System.currentTimeMillis();
+          LinkedList<PooledInstance> idle = idleInstances.get(instance.key);
+          if (idle == null) {
+            idle = new LinkedList<PooledInstance>();
+            idleInstances.put(instance.key, idle);
+          }
+          idle.addFirst(instance);
+        } else {
+          size--;
+          isRemoved = true;
+        }
+        notifyAll();
+      }
+      if (isRemoved) {
+        unload(instance);
+      }
+    }
+  }
+  
+  /**
+   * Loads idle instances of the given plugin, until the pool holds at least <code>count</code> idle
+   * instances with this key, or is full.
+   * @return  The number of instances loaded.
+   */
+  public int prewarm(File pluginFile, float sampleRate, int blockSize, int count)
+      throws FileNotFoundException, JVstLoadException {
+    Key key = new Key(pluginFile, sampleRate, blockSize);
+    int numLoaded = 0;
+    while (true) {
+      synchronized (this) {
+        assertIsOpen();
+        LinkedList<PooledInstance> idle = idleInstances.get(key);
+        if ((idle != null && idle.size() >= count) || size >= maxSize) {
+          return numLoaded;
+        }
+        size++;
+      }
+      PooledInstance instance;
+      try {
+        instance = new PooledInstance(key, JVstHost2.newInstance(key.file, sampleRate, blockSize));
+      } catch (FileNotFoundException fnfe) {
+        cancelReservation();
+        throw fnfe;
+      } catch (JVstLoadException jvle) {
+        cancelReservation();
+        throw jvle;
+      } catch (RuntimeException re) {
+        cancelReservation();
+        throw re;
+      }
+      synchronized (this) {
+        instance.lastReleasedMillis = System.currentTimeMillis();
+        LinkedList<PooledInstance> idle = idleInstances.get(key);
+        if (idle == null) {
+          idle = new LinkedList<PooledInstance>();
+          idleInstances.put(key, idle);
+        }
+        idle.addFirst(instance);
+        notifyAll();
+      }
+      numLoaded++;
+    }
+  }
+  
+  /**
+   * Unloads all instances which have been idle for longer than the idle timeout. This is called
+   * periodically by a background timer, but may also be called directly.
+   * @return  The number of instances unloaded.
+   */
+  public int evictIdle() {
+    List<PooledInstance> evicted = new ArrayList<PooledInstance>();
+    synchronized (this) {
+      long expiry = System.currentTimeMillis() - idleTimeoutMillis;
+      Iterator<LinkedList<PooledInstance>> lists = idleInstances.values().iterator();
+      while (lists.hasNext()) {
+        LinkedList<PooledInstance> idle = lists.next();
+        // the least recently used instances are at the end of each list
+        while (!idle.isEmpty() && idle.getLast().lastReleasedMillis < expiry) {
+          evicted.add(idle.removeLast());
+          size--;
+        }
+        if (idle.isEmpty()) {
+          lists.remove();
+        }
+      }
+      if (!evicted.isEmpty()) {
+        notifyAll();
+      }
+    }
+    for (PooledInstance instance : evicted) {
+      unload(instance); // outside of the lock, as unloading a plugin may take a long time
+    }
+    return evicted.size();
+  }
+  
+  /**
+   * Unloads all idle instances and stops the eviction timer. Instances which are still borrowed are
+   * unloaded when they are released.
+   */
+  public void close() {
+    List<PooledInstance> evicted = new ArrayList<PooledInstance>();
+    synchronized (this) {
+      isClosed = true;
+      evictionTimer.cancel();
+      for (LinkedList<PooledInstance> idle : idleInstances.values()) {
+        evicted.addAll(idle);
+      }
+      size -= evicted.size();
+      idleInstances.clear();
+      notifyAll();
+    }
+    for (PooledInstance instance : evicted) {
+      unload(instance);
+    }
+  }
+  
+  /**
+   * Returns the number of idle instances held by the pool.
+   */
+  public synchronized int getNumIdle() {
+    int numIdle = 0;
+    for (LinkedList<PooledInstance> idle : idleInstances.values()) {
+      numIdle += idle.size();
+    }
+    return numIdle;
+  }
+  
+  /**
+   * Returns the number of instances which are currently borrowed.
+   */
+  public synchronized int getNumBorrowed() {
+    return borrowedInstances.size();
+  }
+  
+  public int getMaxSize() {
+    return maxSize;
+  }
+  
+  /**
+   * Removes the least recently used idle instance of any key from the pool. The caller must hold
+   * the lock, and must unload the instance after releasing it.
+   * @return  The removed instance, or null if there are no idle instances.
+   */
+  private PooledInstance removeLeastRecentlyUsed() {
+    LinkedList<PooledInstance> oldestList = null;
+    for (LinkedList<PooledInstance> idle : idleInstances.values()) {
+      if (!idle.isEmpty() && (oldestList == null || idle.getLast().lastReleasedMillis < oldestList.getLast().lastReleasedMillis)) {
+        oldestList = idle;
+      }
+    }
+    if (oldestList == null) {
+      return null;
+    }
+    size--;
+    return oldestList.removeLast();
+  }
+  
+  private synchronized void cancelReservation() {
+    size--;
+    notifyAll();
+  }
+  
+  /**
+   * Unloads an instance which has already been removed from the pool. Must not be called while holding the lock.
+   */
+  private static void unload(PooledInstance instance) {
+    if (instance.vst.isNativeComponentLoaded()) {
+      instance.vst.turnOffAndUnloadPlugin();
+    }
+  }
+  
+  private void assertIsOpen() {
+    if (isClosed) {
+      throw new IllegalStateException("The pool has been closed.");
+    }
+  }
+  
+  /**
+   * A loaded plugin, together with the state to which it is reset when it is returned to the pool.
+   */
+  private static class PooledInstance {
+    
+    private final Key key;
+    private final JVstHost2 vst;
+    private final byte[] bankChunk;
+    private final int program;
+    private final float[] parameters;
+    private long lastReleasedMillis;
+    
+    private PooledInstance(Key key, JVstHost2 vst) {
+      this.key = key;
+      this.vst = vst;
+      if (vst.acceptsProgramsAsChunks()) {
+        bankChunk = vst.getBankChunk();
+        program = 0;
+        parameters = null;
+      } else {
+        bankChunk = null;
+        program = (vst.numPrograms() > 0) ? vst.getProgram() : -1;
+        parameters = new float[vst.numParameters()];
+        vst.getParameters(parameters);
+      }
+    }
+    
+    /**
+     * Clears everything which a borrower may have left behind, and restores the initial configuration and state.
+     */
+    private void reset() {
+      if (vst.isEditorOpen()) {
+        vst.closeEditor();
+      }
+      vst.turnOff(); // clears tails and delay lines in most plugins
+      vst.clearQueuedEvents();
+      // the borrower may have reconfigured the instance, so that it no longer matches its key
+      vst.setSampleRate(key.sampleRate);
+      vst.setBlockSize(key.blockSize);
+      if (vst.isBypassed()) {
+        vst.setBypass(false);
+      }
+      vst.setIdleSkipping(false);
+      vst.setSampleAccurateParameterChanges(false);
+      vst.resetSamplePosition();
+      if (bankChunk != null) {
+        vst.setBankChunk(bankChunk);
+      } else {
+        if (program >= 0) {
+          vst.setProgram(program);
+        }
+        vst.setParameters(parameters);
+      }
+      vst.turnOn();
+    }
+  }
+  
+  /**
+   * Identifies interchangeable instances: the same plugin file, sample rate and block size.
+   */
+  private static class Key {
+    
+    private final File file;
+    private final float sampleRate;
+    private final int blockSize;
+    
+    private Key(File file, float sampleRate, int blockSize) {
+      if (file == null) {
+        throw new NullPointerException("VST file cannot be null. Specify a non-null File object.");
+      }
+      File canonicalFile;
+      try {
+        canonicalFile = file.getCanonicalFile();
+      } catch (IOException ioe) {
+        canonicalFile = file.getAbsoluteFile();
+      }
+      this.file = canonicalFile;
+      this.sampleRate = sampleRate;
+      this.blockSize = blockSize;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return file.equals(key.file) && Float.floatToIntBits(sampleRate) == Float.floatToIntBits(key.sampleRate) && blockSize == key.blockSize;
+    }
+    
+    @Override
+    public int hashCode() {
+      return 31 * (31 * file.hashCode() + Float.floatToIntBits(sampleRate)) + blockSize;
+    }
+  }
+}
@@ -129,9 +129,11 @@ public class JVstPersistence {
       vst.setProgramName(programName);
     
       if (isRegularChunk) {
+        float[] parameters = new float[numParameters];
         for (int i = 0; i < numParameters; i++) {
-          vst.setParameter(i, fxp.readFloat());
+          parameters[i] = fxp.readFloat();
         }
+        vst.setParameters(parameters);
       } else {
         byte[] chunkData = new byte[fxp.readInt()];
         fxp.read(chunkData);        
@@ -219,11 +221,13 @@ public class JVstPersistence {
       fxp.read(new byte[124]);
     
       if (isRegularChunk) {
+        float[] parameters = new float[vst.numParameters()];
         for (int i = currentProgram; i < currentProgram + numPrograms; i++) {
           vst.setProgram(i);
-          for (int j = 0; j < vst.numParameters(); j++) {
-            vst.setParameter(i, fxp.readFloat());
+          for (int j = 0; j < parameters.length; j++) {
+            parameters[j] = fxp.readFloat();
           }
+          vst.setParameters(parameters);
         }
       } else {
         byte[] chunkData = new byte[fxp.readInt()];
@@ -315,9 +319,10 @@ public class JVstPersistence {
     } else {
       // otherwise the host may save the parameter state as it sees fit
       // In this case, the floats representing the parameters are printed out
-      int numParameters = vst.numParameters();
-      for (int i = 0; i < numParameters; i++) {
-        fxpOut.writeFloat(vst.getParameter(i));
+      float[] parameters = new float[vst.numParameters()];
+      vst.getParameters(parameters);
+      for (float parameter : parameters) {
+        fxpOut.writeFloat(parameter);
       }
     }
     
@@ -385,10 +390,12 @@ public class JVstPersistence {
       fxpOut.writeInt(chunkDataLength);
       fxpOut.write(chunkData);
     } else {
+      float[] parameters = new float[vst.numParameters()];
       for (int i = 0; i < vst.numPrograms(); i++) {
         vst.setProgram(i);
-        for (int j = 0; j < vst.numParameters(); j++) {
-          fxpOut.writeFloat(vst.getParameter(j));
+        vst.getParameters(parameters);
+        for (float parameter : parameters) {
+          fxpOut.writeFloat(parameter);
         }
       }
     }
@@ -421,16 +428,19 @@ public class JVstPersistence {
     sb.append("\n");
     sb.append("===");
     sb.append("\n");
-    for (int i = 0; i < vst.numParameters(); i++) {
+    ParameterDescriptor[] descriptors = vst.getParameterDescriptors();
+    float[] parameters = new float[descriptors.length];
+    vst.getParameters(parameters);
+    for (int i = 0; i < parameters.length; i++) {
       sb.append(i);
       sb.append(" ");
-      sb.append(vst.getParameterName(i)); 
+      sb.append(descriptors[i].getName()); 
       sb.append(": "); 
-      sb.append(vst.getParameter(i)); 
+      sb.append(parameters[i]); 
       sb.append(" ("); 
       sb.append(vst.getParameterDisplay(i)); 
       sb.append(" "); 
-      sb.append(vst.getParameterLabel(i)); 
+      sb.append(descriptors[i].getLabel()); 
       sb.append(")");
       sb.append("\n");
     }
@@ -0,0 +1,269 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/**
+ * A bounded, lock-free queue of MIDI messages waiting to be passed to a plugin. Messages may be
+ * queued from any thread without blocking the audio thread. Each message is stamped either with an
+ * offset relative to the start of the next block, or with an absolute sample time. At the start of
+ * each block the audio thread moves the queued messages into a list of pending messages sorted by
+ * sample time, and schedules those which fall within the block at their correct offsets. Messages
+ * scheduled beyond the end of the block remain pending.
+ * 
+ * Messages are stored in packed primitive form, so that a whole block of events crosses the native
+ * boundary as one <code>int</code> array plus one contiguous <code>byte</code> array of sysex data.
+ * Each scheduled event occupies <code>EVENT_STRIDE</code> ints: the packed short message
+ * (<code>status | data1 &lt;&lt; 8 | data2 &lt;&lt; 16</code>, or just the status 0xF0 for sysex),
+ * the offset of the event from the start of the block, and the number of sysex bytes following the
+ * status byte (zero for short messages). The sysex data of consecutive sysex events is laid out
+ * back to back, in event order.
+ */
+class MidiEventQueue extends EventRing {
+  
+  public static final int EVENT_STRIDE = 3;
+  
+  private static final int SYSEX_STATUS = 0xF0;
+  
+  private final int[] slotPacked;
+  private final byte[][] slotSysex;
+  private final long[] slotTimes;
+  private final boolean[] slotIsAbsolute;
+  
+  // pending messages, sorted by absolute sample time. Only accessed by the audio thread.
+  private final int[] pendingPacked;
+  private final byte[][] pendingSysex;
+  private final long[] pendingTimes;
+  private int numPending;
+  
+  // the events scheduled for the current block. Only accessed by the audio thread.
+  private final int[] scheduledEvents;
+  private byte[] scheduledSysex;
+  
+  private final AtomicLong dropCount;
+  
+  /**
+   * @param capacity  The minimum number of messages which may be waiting at any one time.
+   */
+  public MidiEventQueue(int capacity) {
+    super(capacity);
+    slotPacked = new int[this.capacity];
+    slotSysex = new byte[this.capacity][];
+    slotTimes = new long[this.capacity];
+    slotIsAbsolute = new boolean[this.capacity];
+    pendingPacked = new int[this.capacity];
+    pendingSysex = new byte[this.capacity][];
+    pendingTimes = new long[this.capacity];
+    numPending = 0;
+    scheduledEvents = new int[this.capacity * EVENT_STRIDE];
+    scheduledSysex = new byte[1024];
+    dropCount = new AtomicLong(0L);
+  }
+  
+  /**
+   * Queues the given message. The caller is free to reuse the message afterwards.
+   * @param message  The message to queue.
+   * @param time  The sample offset from the start of the next block, or the absolute sample time.
+   * @param isAbsolute  True if <code>time</code> is an absolute sample time. False if it is an offset.
+   * @return  True if the message was queued. False if the queue is full, in which case the message is dropped.
+   */
+  public boolean offer(ShortMessage message, long time, boolean isAbsolute) {
+    int packed = message.getStatus() | (message.getData1() << 8) | (message.getData2() << 16);
+    return offer(packed, null, time, isAbsolute);
+  }
+  
+  /**
+   * Queues a copy of the data of the given message. The caller is free to reuse the message afterwards.
+   * @see #offer(ShortMessage, long, boolean)
+   */
+  public boolean offer(SysexMessage message, long time, boolean isAbsolute) {
+    byte[] data = message.getData(); // copied outside of the audio thread. Excludes the status byte.
+    return offer(SYSEX_STATUS, data, time, isAbsolute);
+  }
+  
+  private boolean offer(int packed, byte[] sysex, long time, boolean isAbsolute) {
+    long position = claim();
+    if (position < 0L) {
+      dropCount.incrementAndGet();
+      return false;
+    }
+    int index = slotIndex(position);
+    slotPacked[index] = packed;
+    slotSysex[index] = sysex;
+    slotTimes[index] = time;
+    slotIsAbsolute[index] = isAbsolute;
+    publish(position);
+    return true;
+  }
+  
+  /**
+   * Collects all messages which fall within the given block into <code>getScheduledEvents</code> and
+   * <code>getScheduledSysex</code>, in order of their sample time. Messages with the same sample time retain
+   * the order in which they were queued. Messages whose time has already passed are scheduled at the start
+   * of the block. Must only be called by the audio thread.
+   * @param blockStart  The absolute sample time of the first sample in the block.
+   * @param blockSize  The number of samples in the block.
+   * @return  The number of scheduled events.
+   */
+  public int schedule(long blockStart, int blockSize) {
+    drain(blockStart);
+    
+    // take all pending messages which are due before the end of this block
+    long blockEnd = blockStart + blockSize;
+    int numScheduled = 0;
+    int sysexLength = 0;
+    while (numScheduled < numPending && pendingTimes[numScheduled] < blockEnd) {
+      byte[] sysex = pendingSysex[numScheduled];
+      int e = numScheduled * EVENT_STRIDE;
+      scheduledEvents[e] = pendingPacked[numScheduled];
+      scheduledEvents[e + 1] = (int) Math.max(0L, pendingTimes[numScheduled] - blockStart);
+      if (sysex == null) {
+        scheduledEvents[e + 2] = 0;
+      } else {
+        if (sysexLength + sysex.length > scheduledSysex.length) {
+          // rare. The region only grows, until it fits the largest block of sysex data seen.
+          byte[] larger = new byte[Math.max(2 * scheduledSysex.length, sysexLength + sysex.length)];
+          System.arraycopy(scheduledSysex, 0, larger, 0, sysexLength);
+          scheduledSysex = larger;
+        }
+        System.arraycopy(sysex, 0, scheduledSysex, sysexLength, sysex.length);
+        sysexLength += sysex.length;
+        scheduledEvents[e + 2] = sysex.length;
+      }
+      numScheduled++;
+    }
+    removePending(numScheduled);
+    return numScheduled;
+  }
+  
+  /**
+   * Indicates if any message falls before the given sample time. Messages scheduled further in the future
+   * are ignored. Must only be called by the audio thread.
+   * @param blockStart  The absolute sample time of the first sample in the next block.
+   * @param end  The absolute sample time after the last sample of interest.
+   */
+  public boolean hasDueBefore(long blockStart, long end) {
+    drain(blockStart);
+    // if the pending list is full, messages remain in the ring and their times are unknown
+    return (numPending > 0 && pendingTimes[0] < end) || super.size() > 0;
+  }
+  
+  /**
+   * Moves newly queued messages into the sorted pending list. Offsets are taken relative to <code>blockStart</code>.
+   */
+  private void drain(long blockStart) {
+    while (numPending < pendingPacked.length) {
+      long position = poll();
+      if (position < 0L) {
+        break;
+      }
+      int index = slotIndex(position);
+      long time = slotIsAbsolute[index] ? slotTimes[index] : blockStart + slotTimes[index];
+      insertPending(slotPacked[index], slotSysex[index], time);
+      slotSysex[index] = null;
+      release(position);
+    }
+  }
+  
+  /**
+   * Returns the packed events of the most recently scheduled block.
+   */
+  public int[] getScheduledEvents() {
+    return scheduledEvents;
+  }
+  
+  /**
+   * Returns the sysex data of the most recently scheduled block.
+   */
+  public byte[] getScheduledSysex() {
+    return scheduledSysex;
+  }
+  
+  /**
+   * Inserts a message after all pending messages with the same or an earlier time. Messages mostly
+   * arrive in time order, so the insertion point is usually found immediately.
+   */
+  private void insertPending(int packed, byte[] sysex, long time) {
+    int i = numPending;
+    while (i > 0 && pendingTimes[i - 1] > time) {
+      pendingPacked[i] = pendingPacked[i - 1];
+      pendingSysex[i] = pendingSysex[i - 1];
+      pendingTimes[i] = pendingTimes[i - 1];
+      i--;
+    }
+    pendingPacked[i] = packed;
+    pendingSysex[i] = sysex;
+    pendingTimes[i] = time;
+    numPending++;
+  }
+  
+  /**
+   * Removes the first <code>count</code> pending messages.
+   */
+  private void removePending(int count) {
+    if (count > 0) {
+      int remaining = numPending - count;
+      System.arraycopy(pendingPacked, count, pendingPacked, 0, remaining);
+      System.arraycopy(pendingSysex, count, pendingSysex, 0, remaining);
+      System.arraycopy(pendingTimes, count, pendingTimes, 0, remaining);
+      for (int i = remaining; i < numPending; i++) {
+        pendingSysex[i] = null;
+      }
+      numPending = remaining;
+    }
+  }
+  
+  /**
+   * Returns an estimate of the number of messages which have not yet been passed to the plugin.
+   */
+  @Override
+  public int size() {
+    return super.size() + numPending;
+  }
+  
+  /**
+   * Discards all queued and pending messages. They are counted as dropped. Must only be called by the
+   * audio thread, or while the audio thread is not processing.
+   */
+  public void clear() {
+    long position;
+    while ((position = poll()) >= 0L) {
+      slotSysex[slotIndex(position)] = null;
+      release(position);
+      dropCount.incrementAndGet();
+    }
+    dropCount.addAndGet(numPending);
+    removePending(numPending);
+  }
+  
+  /**
+   * Returns the number of messages which were never passed to the plugin, either because the queue
+   * was full when they were offered, or because the queue was cleared.
+   */
+  public long getDropCount() {
+    return dropCount.get();
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of parameter changes waiting to be applied to a plugin. Changes may be
+ * queued from any thread, such as a GUI, OSC or optimisation thread, without blocking the audio thread.
+ * Each change is stamped either with an offset relative to the start of the next block, or with an
+ * absolute sample time. The audio thread moves queued changes into a list of pending changes sorted
+ * by sample time, and collects those which are due into one batch per block, or per segment of a block.
+ * Changes to the same parameter within a batch are coalesced, so that only the latest value is applied.
+ */
+class ParameterChangeQueue extends EventRing {
+  
+  private final int[] slotIndices;
+  private final float[] slotValues;
+  private final long[] slotTimes;
+  private final boolean[] slotIsAbsolute;
+  
+  // pending changes, sorted by absolute sample time. Only accessed by the audio thread.
+  private final int[] pendingIndices;
+  private final float[] pendingValues;
+  private final long[] pendingTimes;
+  private int numPending;
+  
+  // the coalesced batch of changes which are due. Only accessed by the audio thread.
+  private final int[] scheduledIndices;
+  private final float[] scheduledValues;
+  private int numScheduled;
+  private int scheduledSegmentSize;
+  
+  // the position in the batch of each parameter, valid only if batchStamps[index] == batchStamp
+  private int[] batchPositions;
+  private int[] batchStamps;
+  private int batchStamp;
+  
+  private final AtomicLong dropCount;
+  
+  /**
+   * @param capacity  The minimum number of changes which may be waiting at any one time.
+   * @param numParameters  The number of parameters of the plugin. Used to size the coalescing tables.
+   */
+  public ParameterChangeQueue(int capacity, int numParameters) {
+    super(capacity);
+    slotIndices = new int[this.capacity];
+    slotValues = new float[this.capacity];
+    slotTimes = new long[this.capacity];
+    slotIsAbsolute = new boolean[this.capacity];
+    pendingIndices = new int[this.capacity];
+    pendingValues = new float[this.capacity];
+    pendingTimes = new long[this.capacity];
+    numPending = 0;
+    scheduledIndices = new int[this.capacity];
+    scheduledValues = new float[this.capacity];
+    numScheduled = 0;
+    scheduledSegmentSize = 0;
+    batchPositions = new int[Math.max(1, numParameters)];
+    batchStamps = new int[batchPositions.length];
+    batchStamp = 0;
+    dropCount = new AtomicLong(0L);
+  }
+  
+  /**
+   * Queues a change of the given parameter.
+   * @param index  The parameter index.
+   * @param value  The new value of the parameter.
+   * @param time  The sample offset from the start of the next block, or the absolute sample time.
+   * @param isAbsolute  True if <code>time</code> is an absolute sample time. False if it is an offset.
+   * @return  True if the change was queued. False if the queue is full, in which case the change is dropped.
+   */
+  public boolean offer(int index, float value, long time, boolean isAbsolute) {
+    long position = claim();
+    if (position < 0L) {
+      dropCount.incrementAndGet();
+      return false;
+    }
+    int slot = slotIndex(position);
+    slotIndices[slot] = index;
+    slotValues[slot] = value;
+    slotTimes[slot] = time;
+    slotIsAbsolute[slot] = isAbsolute;
+    publish(position);
+    return true;
+  }
+  
+  /**
+   * Collects the changes which are due at the start of the next segment into <code>getScheduledIndices</code>
+   * and <code>getScheduledValues</code>, and determines the length of that segment. Must only be called by
+   * the audio thread.
+   * 
+   * If <code>isSampleAccurate</code> is false, the segment is the whole of the remaining block, and every
+   * change which falls before its end is applied at its start. Otherwise only the changes which are due at
+   * or before the start of the segment are applied, and the segment ends where the next change falls.
+   * @param segmentStart  The absolute sample time of the first sample in the segment.
+   * @param remaining  The number of samples remaining in the block.
+   * @param isSampleAccurate  True if the block should be split at the sample times of the changes.
+   * @param numParameters  The current number of parameters of the plugin. Due changes to parameters which no
+   * longer exist, because the plugin has reduced its parameter count since they were queued, are dropped.
+   * @return  The number of coalesced changes to apply.
+   */
+  public int schedule(long segmentStart, int remaining, boolean isSampleAccurate, int numParameters) {
+    drain(segmentStart);
+    
+    long dueBefore = isSampleAccurate ? segmentStart + 1L : segmentStart + remaining;
+    batchStamp++;
+    numScheduled = 0;
+    int numDue = 0;
+    while (numDue < numPending && pendingTimes[numDue] < dueBefore) {
+      int index = pendingIndices[numDue];
+      if (index >= numParameters) {
+        dropCount.incrementAndGet(); // queued before the plugin reduced its parameter count
+        numDue++;
+        continue;
+      }
+      if (index >= batchPositions.length) {
+        growBatchTables(index + 1); // rare. Only after the plugin has reported more parameters.
+      }
+      if (batchStamps[index] == batchStamp) {
+        scheduledValues[batchPositions[index]] = pendingValues[numDue]; // a later change overrides an earlier one
+      } else {
+        batchStamps[index] = batchStamp;
+        batchPositions[index] = numScheduled;
+        scheduledIndices[numScheduled] = index;
+        scheduledValues[numScheduled] = pendingValues[numDue];
+        numScheduled++;
+      }
+      numDue++;
+    }
+    removePending(numDue);
+    
+    scheduledSegmentSize = remaining;
+    if (isSampleAccurate && numPending > 0 && pendingTimes[0] < segmentStart + remaining) {
+      scheduledSegmentSize = (int) (pendingTimes[0] - segmentStart);
+    }
+    return numScheduled;
+  }
+  
+  /**
+   * Indicates if any change falls before the given sample time. Changes scheduled further in the future
+   * are ignored. Must only be called by the audio thread.
+   * @param blockStart  The absolute sample time of the first sample in the next block.
+   * @param end  The absolute sample time after the last sample of interest.
+   */
+  public boolean hasDueBefore(long blockStart, long end) {
+    drain(blockStart);
+    // if the pending list is full, changes remain in the ring and their times are unknown
+    return (numPending > 0 && pendingTimes[0] < end) || super.size() > 0;
+  }
+  
+  /**
+   * Moves newly queued changes into the sorted pending list. Offsets are taken relative to <code>segmentStart</code>.
+   */
+  private void drain(long segmentStart) {
+    while (numPending < pendingIndices.length) {
+      long position = poll();
+      if (position < 0L) {
+        break;
+      }
+      int slot = slotIndex(position);
+      long time = slotIsAbsolute[slot] ? slotTimes[slot] : segmentStart + slotTimes[slot];
+      insertPending(slotIndices[slot], slotValues[slot], time);
+      release(position);
+    }
+  }
+  
+  /**
+   * Returns the parameter indices of the most recently scheduled batch.
+   */
+  public int[] getScheduledIndices() {
+    return scheduledIndices;
+  }
+  
+  /**
+   * Returns the parameter values of the most recently scheduled batch.
+   */
+  public float[] getScheduledValues() {
+    return scheduledValues;
+  }
+  
+  /**
+   * Returns the number of samples in the segment which was most recently scheduled.
+   */
+  public int getScheduledSegmentSize() {
+    return scheduledSegmentSize;
+  }
+  
+  private void growBatchTables(int minimumLength) {
+    int length = Math.max(minimumLength, 2 * batchPositions.length);
+    int[] positions = new int[length];
+    int[] stamps = new int[length];
+    System.arraycopy(batchPositions, 0, positions, 0, batchPositions.length);
+    System.arraycopy(batchStamps, 0, stamps, 0, batchStamps.length);
+    batchPositions = positions;
+    batchStamps = stamps;
+  }
+  
+  /**
+   * Inserts a change after all pending changes with the same or an earlier time, so that changes
+   * to the same parameter are applied in the order in which they were queued.
+   */
+  private void insertPending(int index, float value, long time) {
+    int i = numPending;
+    while (i > 0 && pendingTimes[i - 1] > time) {
+      pendingIndices[i] = pendingIndices[i - 1];
+      pendingValues[i] = pendingValues[i - 1];
+      pendingTimes[i] = pendingTimes[i - 1];
+      i--;
+    }
+    pendingIndices[i] = index;
+    pendingValues[i] = value;
+    pendingTimes[i] = time;
+    numPending++;
+  }
+  
+  /**
+   * Removes the first <code>count</code> pending changes.
+   */
+  private void removePending(int count) {
+    if (count > 0) {
+      int remaining = numPending - count;
+      System.arraycopy(pendingIndices, count, pendingIndices, 0, remaining);
+      System.arraycopy(pendingValues, count, pendingValues, 0, remaining);
+      System.arraycopy(pendingTimes, count, pendingTimes, 0, remaining);
+      numPending = remaining;
+    }
+  }
+  
+  /**
+   * Returns an estimate of the number of changes which have not yet been applied.
+   */
+  @Override
+  public int size() {
+    return super.size() + numPending;
+  }
+  
+  /**
+   * Discards all queued and pending changes. They are counted as dropped. Must only be called by the
+   * audio thread, or while the audio thread is not processing.
+   */
+  public void clear() {
+    long position;
+    while ((position = poll()) >= 0L) {
+      release(position);
+      dropCount.incrementAndGet();
+    }
+    dropCount.addAndGet(numPending);
+    removePending(numPending);
+  }
+  
+  /**
+   * Returns the number of changes which were never applied, because the queue was full when they were
+   * offered, because the queue was cleared, or because the parameter no longer existed when they came due.
+   */
+  public long getDropCount() {
+    return dropCount.get();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+/**
+ * A data class holding the static description of a plugin parameter: its name, the label of its
+ * units, and whether it may be automated. The elements of this class are not mutable. The current
+ * value and display text of a parameter are not included, as they change while the plugin runs.
+ * See <code>JVstHost2.getParameterDescriptors</code>.
+ */
+public class ParameterDescriptor {
+  
+  private final int INDEX;
+  private final String NAME;
+  private final String LABEL;
+  private final boolean IS_AUTOMATABLE;
+  
+  /**
+   * Construct a <code>ParameterDescriptor</code> for the given parameter index.
+   * @param index
+   * @param name
+   * @param label
+   * @param isAutomatable
+   */
+  public ParameterDescriptor(int index, String name, String label, boolean isAutomatable) {
+    INDEX = index;
+    NAME = name;
+    LABEL = label;
+    IS_AUTOMATABLE = isAutomatable;
+  }
+  
+  /**
+   * Returns the index of the parameter which this object describes.
+   */
+  public int getIndex() {
+    return INDEX;
+  }
+  
+  /**
+   * Returns the name of the parameter, e.g. "LFO speed".
+   */
+  public String getName() {
+    return NAME;
+  }
+  
+  /**
+   * Returns the label of the units of the parameter, e.g. "Hz" or "dB".
+   */
+  public String getLabel() {
+    return LABEL;
+  }
+  
+  /**
+   * Indicates if the parameter can be automated.
+   */
+  public boolean isAutomatable() {
+    return IS_AUTOMATABLE;
+  }
+  
+  @Override
+  public String toString() {
+    return INDEX + ": " + NAME + " (" + LABEL + ")";
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PluginChain processes a serial chain of plugins, each plugin's outputs feeding the next plugin's
+ * inputs. Intermediate results are held in two ping-pong buffers which are allocated once, with as
+ * many channels as the widest plugin in the chain, so that processing a block neither copies nor
+ * allocates. The first plugin reads directly from the caller's inputs, and the last plugin writes
+ * directly into the caller's outputs.
+ * 
+ * If a plugin has more inputs than its predecessor has outputs, the extra inputs receive silence.
+ * Whenever a plugin in the chain reports <code>audioMasterIoChanged</code>, the buffers are re-planned
+ * before the next block is processed.
+ * 
+ * A PluginChain should be processed from one thread at a time.
+ */
+public class PluginChain {
+  
+  private final List<JVstHost2> plugins;
+  private final int maxBlockSize;
+  private final JVstHostListener ioChangedListener;
+  private volatile boolean isPlanValid;
+  
+  // the plan: the channel views passed to each plugin, and the channels to clear before each plugin
+  private float[][][] stageInputs;
+  private float[][][] stageOutputs;
+  private int[] clearFrom;
+  private int[] clearTo;
+  private float[][] pingBuffer;
+  private float[][] pongBuffer;
+  
+  /**
+   * @param maxBlockSize  The largest block size which will be passed to <code>processReplacing</code>.
+   * @param plugins  The plugins in processing order. They must be turned on before the chain is processed.
+   * @throws IllegalArgumentException  Thrown if the chain is empty or the block size is not positive.
+   */
+  public PluginChain(int maxBlockSize, JVstHost2... plugins) {
+    this(maxBlockSize, Arrays.asList(plugins));
+  }
+  
+  public PluginChain(int maxBlockSize, List<JVstHost2> plugins) {
+    if (plugins == null) {
+      throw new NullPointerException("The plugin list is null.");
+    }
+    if (plugins.isEmpty()) {
+      throw new IllegalArgumentException("A chain must contain at least one plugin.");
+    }
+    if (maxBlockSize <= 0) {
+      throw new IllegalArgumentException("Block size must be positive: " + maxBlockSize);
+    }
+    for (JVstHost2 vst : plugins) {
+      if (vst == null) {
+        throw new NullPointerException("The chain contains a null plugin.");
+      }
+    }
+    this.plugins = Collections.unmodifiableList(new ArrayList<JVstHost2>(plugins));
+    this.maxBlockSize = maxBlockSize;
+    
+    ioChangedListener = new AbstractJVstHostListener() {
+      @Override
+      public void onAudioMasterIoChanged(JVstHost2 vst, int numInputs, int numOutputs, int initialDelay, int numParameters) {
+        isPlanValid = false; // only flag the change here, as this may be called from within a process call
+      }
+    };
+    for (JVstHost2 vst : this.plugins) {
+      vst.addJVstHostListener(ioChangedListener);
+    }
+    
+    pingBuffer = new float[0][];
+    pongBuffer = new float[0][];
+    plan();
+  }
+  
+  /**
+   * Assigns the ping-pong buffers to each stage of the chain. The buffers are only reallocated if
+   * they have become too narrow.
+   */
+  private void plan() {
+    isPlanValid = true; // before reading the channel counts, so that a concurrent change is not lost
+    int numStages = plugins.size();
+    int maxChannels = 0;
+    for (JVstHost2 vst : plugins) {
+      maxChannels = Math.max(maxChannels, Math.max(vst.numInputs(), vst.numOutputs()));
+    }
+    if (pingBuffer.length < maxChannels) {
+      pingBuffer = newChannels(maxChannels);
+      pongBuffer = newChannels(maxChannels);
+    }
+    
+    stageInputs = new float[numStages][][];
+    stageOutputs = new float[numStages][][];
+    clearFrom = new int[numStages];
+    clearTo = new int[numStages];
+    float[][] source = null; // the caller's inputs
+    for (int i = 0; i < numStages; i++) {
+      JVstHost2 vst = plugins.get(i);
+      int numInputs = vst.numInputs();
+      int numOutputs = vst.numOutputs();
+      stageInputs[i] = (source == null) ? null : Arrays.copyOf(source, numInputs);
+      if (i > 0) {
+        // inputs which the previous plugin did not write may hold stale samples from an earlier stage
+        clearFrom[i] = Math.min(plugins.get(i - 1).numOutputs(), numInputs);
+        clearTo[i] = numInputs;
+      }
+      if (i == numStages - 1) {
+        stageOutputs[i] = null; // the caller's outputs
+      } else {
+        float[][] destination = (source == pingBuffer) ? pongBuffer : pingBuffer;
+        stageOutputs[i] = Arrays.copyOf(destination, numOutputs);
+        source = destination;
+      }
+    }
+  }
+  
+  private float[][] newChannels(int numChannels) {
+    float[][] channels = new float[numChannels][];
+    for (int i = 0; i < numChannels; i++) {
+      channels[i] = new float[maxBlockSize];
+    }
+    return channels;
+  }
+  
+  /**
+   * Processes one block through the whole chain.
+   * @param inputs  At least <code>numInputs()</code> channels.
+   * @param outputs  At least <code>numOutputs()</code> channels. They must not be the same arrays as the inputs.
+   * @param blockSize  The number of samples to process, at most the maximum block size of the chain.
+   */
+  public void processReplacing(float[][] inputs, float[][] outputs, int blockSize) {
+    if (blockSize > maxBlockSize) {
+      throw new IllegalArgumentException("Block size exceeds the maximum block size of the chain: " + blockSize + " > " + maxBlockSize);
+    }
+    if (!isPlanValid) {
+      plan();
+    }
+    for (int i = 0; i < stageInputs.length; i++) {
+      float[][] stageInput = (stageInputs[i] == null) ? inputs : stageInputs[i];
+      for (int j = clearFrom[i]; j < clearTo[i]; j++) {
+        Arrays.fill(stageInput[j], 0, blockSize, 0f);
+      }
+      plugins.get(i).processReplacing(stageInput, (stageOutputs[i] == null) ? outputs : stageOutputs[i], blockSize);
+    }
+  }
+  
+  /**
+   * Returns the number of input channels expected by the chain, those of the first plugin.
+   */
+  public int numInputs() {
+    return plugins.get(0).numInputs();
+  }
+  
+  /**
+   * Returns the number of output channels produced by the chain, those of the last plugin.
+   */
+  public int numOutputs() {
+    return plugins.get(plugins.size() - 1).numOutputs();
+  }
+  
+  /**
+   * Returns the total latency of the chain in samples, the sum of each plugin's initial delay.
+   */
+  public int getInitialDelay() {
+    int initialDelay = 0;
+    for (JVstHost2 vst : plugins) {
+      initialDelay += vst.getInitialDelay();
+    }
+    return initialDelay;
+  }
+  
+  public int getMaxBlockSize() {
+    return maxBlockSize;
+  }
+  
+  /**
+   * Returns the plugins in processing order.
+   */
+  public List<JVstHost2> getPlugins() {
+    return plugins;
+  }
+  
+  /**
+   * Stops listening to the plugins in the chain. The plugins themselves are not turned off or unloaded.
+   */
+  public void close() {
+    for (JVstHost2 vst : plugins) {
+      vst.removeJVstHostListener(ioChangedListener);
+    }
+  }
+}
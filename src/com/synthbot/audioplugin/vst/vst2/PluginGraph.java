@@ -0,0 +1,667 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PluginGraph processes a network of plugins, such as parallel busses and several synths feeding a
+ * master chain. Each plugin is a node in the graph. A plugin node takes its inputs from at most one
+ * source node, and mixer nodes sum any number of sources. The graph has one input node, which holds
+ * the graph inputs, and one output node, whose outputs are the graph outputs.
+ * 
+ * Each block the nodes are processed in topological order by the calling thread and a fixed pool of
+ * worker threads, so that independent branches run concurrently. Nodes are claimed in schedule order,
+ * and a node waits for its sources by spinning briefly and then parking, as a block must finish well
+ * within its deadline. Per-node processing times are available from each <code>Node</code>.
+ * 
+ * Plugin latencies, as reported by <code>getInitialDelay</code>, accumulate along each path. Where
+ * paths of different latency meet at a mixer, the earlier ones are delayed by ring buffer delay lines
+ * so that all sources arrive aligned.
+ * 
+ * The graph is re-planned before the next block whenever its structure changes or one of its plugins
+ * reports <code>audioMasterIoChanged</code>, which is also how a plugin announces a new initial delay.
+ * Delay lines are only reallocated if their delay changes. All methods are thread-safe, but blocks are
+ * processed one at a time.
+ */
+public class PluginGraph {
+  
+  private static final int SPIN_LIMIT = 1000;
+  private static final int YIELD_LIMIT = 1100;
+  private static final long PARK_NANOS = 20000L;
+  
+  private final int maxBlockSize;
+  private final Node inputNode;
+  private final List<Node> nodes;
+  private final JVstHostListener ioChangedListener;
+  private final Thread[] workers;
+  private volatile boolean isPlanValid;
+  private volatile boolean isRunning;
+  private Node outputNode;
+  
+  // the state of the current block. The generation is stored in the upper 32 bits of blockState,
+  // and the index of the next unclaimed node in the schedule in the lower 32 bits.
+  private final AtomicLong blockState;
+  private final AtomicInteger numCompleted;
+  private int generation;
+  private int blockSize;
+  private Node[] schedule;
+  private volatile Throwable failure;
+  
+  /**
+   * @param numInputs  The number of channels of the graph input node.
+   * @param maxBlockSize  The largest block size which will be passed to <code>processReplacing</code>.
+   * @param numWorkers  The number of worker threads in addition to the calling thread. Zero processes
+   * every block on the calling thread.
+   */
+  public PluginGraph(int numInputs, int maxBlockSize, int numWorkers) {
+    if (numInputs < 0) {
+      throw new IllegalArgumentException("The number of inputs may not be negative: " + numInputs);
+    }
+    if (maxBlockSize <= 0) {
+      throw new IllegalArgumentException("Block size must be positive: " + maxBlockSize);
+    }
+    if (numWorkers < 0) {
+      throw new IllegalArgumentException("The number of workers may not be negative: " + numWorkers);
+    }
+    this.maxBlockSize = maxBlockSize;
+    nodes = new ArrayList<Node>();
+    inputNode = new Node(null, numInputs);
+    nodes.add(inputNode);
+    outputNode = inputNode;
+    schedule = new Node[0];
+    blockState = new AtomicLong(0L);
+    numCompleted = new AtomicInteger(0);
+    generation = 0;
+    isPlanValid = false;
+    
+    ioChangedListener = new AbstractJVstHostListener() {
+      @Override
+      public void onAudioMasterIoChanged(JVstHost2 vst, int numInputs, int numOutputs, int initialDelay, int numParameters) {
+        isPlanValid = false; // only flag the change here, as this may be called from within a process call
+      }
+    };
+    
+    isRunning = true;
+    workers = new Thread[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          runWorker();
+        }
+      }, "PluginGraph worker " + i);
+      workers[i].setDaemon(true);
+      workers[i].setPriority(Thread.MAX_PRIORITY);
+      workers[i].start();
+    }
+  }
+  
+  /**
+   * Returns the node holding the graph inputs. It may be connected to any number of nodes.
+   */
+  public Node getInputNode() {
+    return inputNode;
+  }
+  
+  /**
+   * Adds a plugin to the graph. The plugin must be turned on before the graph is processed.
+   */
+  public synchronized Node addPlugin(JVstHost2 vst) {
+    if (vst == null) {
+      throw new NullPointerException("The plugin is null.");
+    }
+    for (Node node : nodes) {
+      if (node.vst == vst) {
+        throw new IllegalArgumentException("The plugin is already in the graph: " + vst);
+      }
+    }
+    Node node = new Node(vst, 0);
+    nodes.add(node);
+    vst.addJVstHostListener(ioChangedListener);
+    isPlanValid = false;
+    return node;
+  }
+  
+  /**
+   * Adds a mixer to the graph, which sums the outputs of all of its sources channel by channel.
+   */
+  public synchronized Node addMixer(int numChannels) {
+    if (numChannels <= 0) {
+      throw new IllegalArgumentException("A mixer must have at least one channel: " + numChannels);
+    }
+    Node node = new Node(null, numChannels);
+    nodes.add(node);
+    isPlanValid = false;
+    return node;
+  }
+  
+  /**
+   * Connects the outputs of <code>source</code> to the inputs of <code>destination</code>.
+   * @throws IllegalArgumentException  Thrown if either node is not in this graph, if the destination
+   * is the input node, or if the destination is a plugin which already has a source.
+   */
+  public synchronized void connect(Node source, Node destination) {
+    assertIsNode(source);
+    assertIsNode(destination);
+    if (destination == inputNode) {
+      throw new IllegalArgumentException("The input node cannot be the destination of a connection.");
+    }
+    if (destination.sources.contains(source)) {
+      throw new IllegalArgumentException("The nodes are already connected.");
+    }
+    if (destination.vst != null && !destination.sources.isEmpty()) {
+      throw new IllegalArgumentException("A plugin node may only have one source. Connect several sources through a mixer.");
+    }
+    destination.sources.add(source);
+    isPlanValid = false;
+  }
+  
+  /**
+   * Removes the connection from <code>source</code> to <code>destination</code>, if there is one.
+   */
+  public synchronized void disconnect(Node source, Node destination) {
+    assertIsNode(source);
+    assertIsNode(destination);
+    if (destination.sources.remove(source)) {
+      isPlanValid = false;
+    }
+  }
+  
+  /**
+   * Selects the node whose outputs are copied into the graph outputs.
+   */
+  public synchronized void setOutputNode(Node node) {
+    assertIsNode(node);
+    outputNode = node;
+    isPlanValid = false;
+  }
+  
+  public synchronized Node getOutputNode() {
+    return outputNode;
+  }
+  
+  /**
+   * Returns all nodes of the graph, including the input node, in the order in which they were added.
+   */
+  public synchronized List<Node> getNodes() {
+    return Collections.unmodifiableList(new ArrayList<Node>(nodes));
+  }
+  
+  /**
+   * Returns the number of output channels of the graph, those of the output node.
+   */
+  public synchronized int numOutputs() {
+    return outputNode.numOutputs();
+  }
+  
+  /**
+   * Returns the latency of the graph outputs in samples, after delay compensation.
+   * @throws IllegalStateException  Thrown if the graph contains a cycle.
+   */
+  public synchronized int getInitialDelay() {
+    if (!isPlanValid) {
+      plan();
+    }
+    return outputNode.latency;
+  }
+  
+  public int getMaxBlockSize() {
+    return maxBlockSize;
+  }
+  
+  public int getNumWorkers() {
+    return workers.length;
+  }
+  
+  private void assertIsNode(Node node) {
+    if (node == null) {
+      throw new NullPointerException("The node is null.");
+    }
+    if (!nodes.contains(node)) {
+      throw new IllegalArgumentException("The node is not part of this graph.");
+    }
+  }
+  
+  /**
+   * Orders the nodes topologically and assigns their buffers.
+   * @throws IllegalStateException  Thrown if the graph contains a cycle.
+   */
+  private void plan() {
+    isPlanValid = true; // before reading the channel counts, so that a concurrent change is not lost
+    
+    // Kahn's algorithm, keeping the order in which nodes were added where possible
+    Map<Node, List<Node>> successors = new IdentityHashMap<Node, List<Node>>();
+    Map<Node, Integer> numPendingSources = new IdentityHashMap<Node, Integer>();
+    for (Node node : nodes) {
+      successors.put(node, new ArrayList<Node>());
+    }
+    for (Node node : nodes) {
+      numPendingSources.put(node, node.sources.size());
+      for (Node source : node.sources) {
+        successors.get(source).add(node);
+      }
+    }
+    LinkedList<Node> ready = new LinkedList<Node>();
+    for (Node node : nodes) {
+      if (node.sources.isEmpty()) {
+        ready.add(node);
+      }
+    }
+    List<Node> order = new ArrayList<Node>(nodes.size());
+    while (!ready.isEmpty()) {
+      Node node = ready.removeFirst();
+      order.add(node);
+      for (Node successor : successors.get(node)) {
+        int numPending = numPendingSources.get(successor) - 1;
+        numPendingSources.put(successor, numPending);
+        if (numPending == 0) {
+          ready.add(successor);
+        }
+      }
+    }
+    if (order.size() < nodes.size()) {
+      isPlanValid = false;
+      throw new IllegalStateException("The graph contains a cycle.");
+    }
+    
+    for (Node node : nodes) {
+      // the graph output is read after the block, and so counts as a consumer too
+      node.numConsumers = successors.get(node).size() + ((node == outputNode) ? 1 : 0);
+    }
+    for (Node node : order) {
+      node.plan();
+    }
+    order.remove(inputNode); // the input node is filled before the block starts
+    schedule = order.toArray(new Node[order.size()]);
+  }
+  
+  /**
+   * Processes one block through the graph.
+   * @param inputs  At least as many channels as the input node.
+   * @param outputs  At least <code>numOutputs()</code> channels.
+   * @param blockSize  The number of samples to process, at most the maximum block size of the graph.
+   * @throws IllegalStateException  Thrown if the graph contains a cycle.
+   */
+  public synchronized void processReplacing(float[][] inputs, float[][] outputs, int blockSize) {
+    if (blockSize > maxBlockSize) {
+      throw new IllegalArgumentException("Block size exceeds the maximum block size of the graph: " + blockSize + " > " + maxBlockSize);
+    }
+    if (inputs.length < inputNode.numOutputs()) {
+      throw new IllegalArgumentException("Input array length must equal the number of inputs: " + inputs.length + " < " + inputNode.numOutputs());
+    }
+    if (!isPlanValid) {
+      plan();
+    }
+    if (outputs.length < outputNode.outputs.length) {
+      throw new IllegalArgumentException("Output array length must equal the number of outputs: " + outputs.length + " < " + outputNode.outputs.length);
+    }
+    
+    for (int i = 0; i < inputNode.outputs.length; i++) {
+      System.arraycopy(inputs[i], 0, inputNode.outputs[i], 0, blockSize);
+    }
+    
+    // publish the block to the workers
+    this.blockSize = blockSize;
+    failure = null;
+    numCompleted.set(0);
+    generation++;
+    blockState.set((long) generation << 32); // the volatile write makes the fields above visible
+    for (Thread worker : workers) {
+      LockSupport.unpark(worker);
+    }
+    
+    processSchedule(generation);
+    for (int i = 0; numCompleted.get() < schedule.length; i++) {
+      idle(i);
+    }
+    
+    Throwable t = failure;
+    if (t != null) {
+      if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      } else {
+        throw new RuntimeException(t);
+      }
+    }
+    
+    for (int i = 0; i < outputNode.outputs.length; i++) {
+      System.arraycopy(outputNode.outputs[i], 0, outputs[i], 0, blockSize);
+    }
+  }
+  
+  /**
+   * Claims and processes nodes of the given block until none are left.
+   */
+  private void processSchedule(int blockGeneration) {
+    Node[] schedule = this.schedule;
+    while (true) {
+      long state = blockState.get();
+      int index = (int) state;
+      if ((int) (state >>> 32) != blockGeneration || index >= schedule.length) {
+        return;
+      }
+      if (blockState.compareAndSet(state, state + 1)) {
+        Node node = schedule[index];
+        for (Node source : node.plannedSources) {
+          // sources earlier in the schedule have already been claimed, so this cannot deadlock
+          for (int i = 0; source != inputNode && source.doneGeneration != blockGeneration; i++) {
+            idle(i);
+          }
+        }
+        try {
+          if (failure == null) {
+            node.process(blockSize);
+          }
+        } catch (Throwable t) {
+          failure = t;
+        }
+        node.doneGeneration = blockGeneration;
+        numCompleted.incrementAndGet();
+      }
+    }
+  }
+  
+  private void runWorker() {
+    int seenGeneration = 0;
+    while (isRunning) {
+      int blockGeneration = (int) (blockState.get() >>> 32);
+      if (blockGeneration == seenGeneration) {
+        // spin briefly in case the next block follows immediately, otherwise wait to be unparked
+        for (int i = 0; i < SPIN_LIMIT && (int) (blockState.get() >>> 32) == seenGeneration; i++) {
+          // busy wait, re-reading the block state
+        }
+        if ((int) (blockState.get() >>> 32) == seenGeneration && isRunning) {
+          LockSupport.park(this);
+        }
+      } else {
+        seenGeneration = blockGeneration;
+        processSchedule(blockGeneration);
+      }
+    }
+  }
+  
+  /**
+   * Waits a little, escalating from spinning to yielding to parking as the wait goes on.
+   */
+  private static void idle(int iteration) {
+    if (iteration < SPIN_LIMIT) {
+      return; // busy wait, as the caller re-reads the volatile state it is waiting on
+    } else if (iteration < YIELD_LIMIT) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+  
+  /**
+   * Stops the worker threads and stops listening to the plugins. The plugins themselves are not
+   * turned off or unloaded.
+   */
+  public synchronized void close() {
+    isRunning = false;
+    for (Thread worker : workers) {
+      LockSupport.unpark(worker);
+    }
+    for (Node node : nodes) {
+      if (node.vst != null) {
+        node.vst.removeJVstHostListener(ioChangedListener);
+      }
+    }
+  }
+  
+  /**
+   * A node of the graph: the input node, a plugin or a mixer.
+   */
+  public class Node {
+    
+    private final JVstHost2 vst;
+    private final int numChannels; // of the input node and mixers
+    private final List<Node> sources;
+    private Node[] plannedSources; // a copy of the sources, which may be iterated without allocation
+    private DelayLine[] sourceDelays; // for each planned source of a mixer, or null if it needs no delay
+    private int latency; // of this node's outputs, in samples
+    private float[][] inputs; // channel views passed to the plugin
+    private float[][] sourceCopies; // private copies of the source channels, if the source has other consumers
+    private float[][] silentInputs; // the inputs which are not connected to a source
+    private int numConsumers; // the number of nodes reading this node's outputs, as of the last plan
+    private float[][] outputs;
+    private volatile int doneGeneration;
+    private volatile long lastProcessNanos;
+    private volatile long maxProcessNanos;
+    private volatile long totalProcessNanos;
+    private volatile long numBlocks;
+    
+    private Node(JVstHost2 vst, int numChannels) {
+      this.vst = vst;
+      this.numChannels = numChannels;
+      sources = new ArrayList<Node>();
+      plannedSources = new Node[0];
+      sourceDelays = new DelayLine[0];
+      sourceCopies = new float[0][];
+      silentInputs = new float[0][];
+      outputs = new float[0][];
+    }
+    
+    /**
+     * Allocates the output buffers if their width has changed, and builds the input views of a plugin.
+     * The sources must already be planned.
+     */
+    private void plan() {
+      Node[] previousSources = plannedSources;
+      DelayLine[] previousDelays = sourceDelays;
+      plannedSources = sources.toArray(new Node[sources.size()]);
+      sourceDelays = new DelayLine[plannedSources.length];
+      int numOutputs = numOutputs();
+      if (outputs.length != numOutputs) {
+        outputs = new float[numOutputs][maxBlockSize];
+      }
+      
+      latency = 0;
+      for (Node source : plannedSources) {
+        latency = Math.max(latency, source.latency);
+      }
+      if (vst != null) {
+        latency += vst.getInitialDelay();
+      } else {
+        for (int i = 0; i < plannedSources.length; i++) {
+          int delay = latency - plannedSources[i].latency;
+          int numDelayed = Math.min(numOutputs, plannedSources[i].outputs.length);
+          if (delay > 0) {
+            // keep an existing delay line, and the signal within it, if it still fits
+            for (int j = 0; j < previousSources.length; j++) {
+              if (previousSources[j] == plannedSources[i] && previousDelays[j] != null && previousDelays[j].fits(delay, numDelayed)) {
+                sourceDelays[i] = previousDelays[j];
+              }
+            }
+            if (sourceDelays[i] == null) {
+              sourceDelays[i] = new DelayLine(delay, numDelayed);
+            }
+          }
+        }
+      }
+      if (vst != null) {
+        inputs = new float[vst.numInputs()][];
+        float[][] sourceOutputs = (plannedSources.length == 0) ? new float[0][] : plannedSources[0].outputs;
+        int numConnected = Math.min(inputs.length, sourceOutputs.length);
+        // plugins may write to their inputs while other nodes process concurrently. A source which is
+        // read by other nodes too is therefore copied, and unconnected inputs are this node's own.
+        boolean isSourceShared = plannedSources.length > 0 && plannedSources[0].numConsumers > 1;
+        sourceCopies = new float[isSourceShared ? numConnected : 0][maxBlockSize];
+        silentInputs = new float[inputs.length - numConnected][maxBlockSize];
+        for (int i = 0; i < inputs.length; i++) {
+          if (i < numConnected) {
+            inputs[i] = isSourceShared ? sourceCopies[i] : sourceOutputs[i];
+          } else {
+            inputs[i] = silentInputs[i - numConnected];
+          }
+        }
+      }
+    }
+    
+    private void process(int blockSize) {
+      long startTime = System.nanoTime();
+      if (vst != null) {
+        for (int i = 0; i < sourceCopies.length; i++) {
+          System.arraycopy(plannedSources[0].outputs[i], 0, sourceCopies[i], 0, blockSize);
+        }
+        for (float[] silentInput : silentInputs) {
+          Arrays.fill(silentInput, 0, blockSize, 0f); // in case the plugin wrote to it during the last block
+        }
+        vst.processReplacing(inputs, outputs, blockSize);
+      } else {
+        for (float[] output : outputs) {
+          Arrays.fill(output, 0, blockSize, 0f);
+        }
+        for (int k = 0; k < plannedSources.length; k++) {
+          float[][] sourceOutputs = plannedSources[k].outputs;
+          int numSummed = Math.min(outputs.length, sourceOutputs.length);
+          if (sourceDelays[k] != null) {
+            sourceOutputs = sourceDelays[k].process(sourceOutputs, blockSize);
+          }
+          for (int i = 0; i < numSummed; i++) {
+            float[] output = outputs[i];
+            float[] input = sourceOutputs[i];
+            for (int j = 0; j < blockSize; j++) {
+              output[j] += input[j];
+            }
+          }
+        }
+      }
+      long processNanos = System.nanoTime() - startTime;
+      // only one thread processes a node at a time, so these updates do not race
+      lastProcessNanos = processNanos;
+      if (processNanos > maxProcessNanos) {
+        maxProcessNanos = processNanos;
+      }
+      totalProcessNanos += processNanos;
+      numBlocks++;
+    }
+    
+    /**
+     * Returns the plugin of this node, or null if it is the input node or a mixer.
+     */
+    public JVstHost2 getPlugin() {
+      return vst;
+    }
+    
+    public boolean isMixer() {
+      return vst == null && this != inputNode;
+    }
+    
+    public int numOutputs() {
+      return (vst == null) ? numChannels : vst.numOutputs();
+    }
+    
+    /**
+     * Returns the latency of this node's outputs relative to the graph inputs, in samples, as of the
+     * last time that the graph was planned.
+     */
+    public int getLatency() {
+      return latency;
+    }
+    
+    /**
+     * Returns the time taken to process this node in the most recent block, in nanoseconds.
+     */
+    public long getLastProcessNanos() {
+      return lastProcessNanos;
+    }
+    
+    /**
+     * Returns the longest time taken to process this node in any block, in nanoseconds.
+     */
+    public long getMaxProcessNanos() {
+      return maxProcessNanos;
+    }
+    
+    /**
+     * Returns the mean time taken to process this node per block, in nanoseconds.
+     */
+    public double getMeanProcessNanos() {
+      long n = numBlocks;
+      return (n == 0L) ? 0.0 : (double) totalProcessNanos / n;
+    }
+    
+    @Override
+    public String toString() {
+      if (vst != null) {
+        return vst.getEffectName();
+      } else {
+        return (this == inputNode) ? "input" : "mixer";
+      }
+    }
+  }
+  
+  /**
+   * Delays a group of channels by a fixed number of samples, using one ring buffer per channel.
+   */
+  private class DelayLine {
+    
+    private final float[][] rings;
+    private final float[][] outputs;
+    private int position; // the index of the oldest sample in each ring
+    
+    private DelayLine(int delay, int numChannels) {
+      rings = new float[numChannels][delay];
+      outputs = new float[numChannels][maxBlockSize];
+      position = 0;
+    }
+    
+    private boolean fits(int delay, int numChannels) {
+      return rings.length == numChannels && (numChannels == 0 || rings[0].length == delay);
+    }
+    
+    /**
+     * Returns the delayed block. The returned channels are only valid until the next call.
+     */
+    private float[][] process(float[][] inputs, int blockSize) {
+      int endPosition = position;
+      for (int i = 0; i < rings.length; i++) {
+        float[] ring = rings[i];
+        float[] input = inputs[i];
+        float[] output = outputs[i];
+        int p = position;
+        for (int j = 0; j < blockSize; j++) {
+          output[j] = ring[p];
+          ring[p] = input[j];
+          if (++p == ring.length) {
+            p = 0;
+          }
+        }
+        endPosition = p;
+      }
+      position = endPosition;
+      return outputs;
+    }
+  }
+}
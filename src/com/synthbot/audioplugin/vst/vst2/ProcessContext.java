@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2007 - 2009 Martin Roth (mhroth@gmail.com)
+ *                        Matthew Yee-King
+ * 
+ *  This file is part of JVstHost.
+ *
+ *  JVstHost is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JVstHost is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JVstHost.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.synthbot.audioplugin.vst.vst2;
+
+/**
+ * A <code>ProcessContext</code> binds a plugin to a fixed set of input and output channels and a fixed
+ * block size. The channels are checked once, when the context is created with <code>newProcessContext</code>.
+ * Each call to <code>process</code> then processes one block without repeating any of those checks, which
+ * makes it the cheapest way to drive a plugin whose buffers do not change from block to block.
+ * 
+ * The channel arrays or buffers given to the context are used directly. Their contents may be changed
+ * between blocks, but the arrays themselves must not be replaced or resized. A context becomes invalid
+ * when the plugin changes its input/output configuration (see <code>JVstHostListener.onAudioMasterIoChanged</code>),
+ * or when the block size of the plugin is changed. <code>process</code> then throws an <code>IllegalStateException</code>,
+ * and a new context must be created.
+ */
+public abstract class ProcessContext {
+  
+  protected final int blockSize;
+  
+  protected ProcessContext(int blockSize) {
+    this.blockSize = blockSize;
+  }
+  
+  /**
+   * Returns the number of samples processed by each call to <code>process</code>.
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+  
+  /**
+   * Indicates if this context may still be used.
+   * @return  True if the plugin configuration has not changed since this context was created. False otherwise.
+   */
+  public abstract boolean isValid();
+  
+  /**
+   * Processes one block of audio. Queued MIDI messages, via <code>queueMidiMessage</code>, will be passed to the plugin.
+   * @throws IllegalStateException  Thrown if this context is no longer valid, or if the plugin is turned off.
+   */
+  public abstract void process();
+}
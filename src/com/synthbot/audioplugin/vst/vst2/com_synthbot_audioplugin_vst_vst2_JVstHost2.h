@@ -7,6 +7,16 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost2_NATIVE_INTERFACE_VERSION
+#define com_synthbot_audioplugin_vst_vst2_JVstHost2_NATIVE_INTERFACE_VERSION 2L
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost2
+ * Method:    getNativeInterfaceVersion
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost2_getNativeInterfaceVersion
+  (JNIEnv *, jclass);
+
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost2
  * Method:    loadPlugin
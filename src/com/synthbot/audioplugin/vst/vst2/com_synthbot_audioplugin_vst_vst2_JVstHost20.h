@@ -7,6 +7,20 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_NATIVE_INTERFACE_VERSION
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_NATIVE_INTERFACE_VERSION 2L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_MIDI_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_MIDI_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_PARAMETER_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_PARAMETER_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_PARAMETER_DISPLAY_CACHE_MILLIS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_PARAMETER_DISPLAY_CACHE_MILLIS 100LL
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_MIDI_EVENT_STRIDE
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_MIDI_EVENT_STRIDE 3L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_SILENCE_THRESHOLD
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_SILENCE_THRESHOLD 1.0E-6f
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost20_UNKNOWN_TAIL_SECONDS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost20_UNKNOWN_TAIL_SECONDS 5.0f
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
  * Method:    setThis
@@ -15,13 +29,37 @@ extern "C" {
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setThis
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    setParameters
+ * Signature: ([I[FIJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setParameters___3I_3FIJ
+  (JNIEnv *, jclass, jintArray, jfloatArray, jint, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    processEvents
+ * Signature: ([II[BJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processEvents
+  (JNIEnv *, jclass, jintArray, jint, jbyteArray, jlong);
+
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
  * Method:    processReplacing
- * Signature: ([Ljavax/sound/midi/MidiMessage;[[F[[FIJ)V
+ * Signature: ([[F[[FIIJ)V
  */
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processReplacing
-  (JNIEnv *, jclass, jobjectArray, jobjectArray, jobjectArray, jint, jlong);
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jint, jint, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    processReplacingDirect
+ * Signature: ([Ljava/nio/FloatBuffer;[Ljava/nio/FloatBuffer;IIJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_processReplacingDirect
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jint, jint, jlong);
 
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
@@ -34,10 +72,26 @@ JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_canRepl
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
  * Method:    process
- * Signature: ([Ljavax/sound/midi/MidiMessage;[[F[[FIJ)V
+ * Signature: ([[F[[FIIJ)V
  */
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_process
-  (JNIEnv *, jclass, jobjectArray, jobjectArray, jobjectArray, jint, jlong);
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jint, jint, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    getTailSize
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_getTailSize
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    producesSoundInStop
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_producesSoundInStop
+  (JNIEnv *, jclass, jlong);
 
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
@@ -55,6 +109,22 @@ JNIEXPORT jint JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_canDo
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setParameter
   (JNIEnv *, jclass, jint, jfloat, jlong);
 
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    getParameters
+ * Signature: ([FIJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_getParameters
+  (JNIEnv *, jclass, jfloatArray, jint, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
+ * Method:    setParameters
+ * Signature: ([FIJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost20_setParameters___3FIJ
+  (JNIEnv *, jclass, jfloatArray, jint, jlong);
+
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost20
  * Method:    getParameter
@@ -7,6 +7,20 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_NATIVE_INTERFACE_VERSION
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_NATIVE_INTERFACE_VERSION 2L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_MIDI_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_MIDI_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_PARAMETER_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_PARAMETER_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_PARAMETER_DISPLAY_CACHE_MILLIS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_PARAMETER_DISPLAY_CACHE_MILLIS 100LL
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_MIDI_EVENT_STRIDE
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_MIDI_EVENT_STRIDE 3L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_SILENCE_THRESHOLD
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_SILENCE_THRESHOLD 1.0E-6f
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost23_UNKNOWN_TAIL_SECONDS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost23_UNKNOWN_TAIL_SECONDS 5.0f
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost23
  * Method:    startProcess
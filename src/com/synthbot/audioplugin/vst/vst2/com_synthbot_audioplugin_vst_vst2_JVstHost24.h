@@ -7,13 +7,35 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_NATIVE_INTERFACE_VERSION
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_NATIVE_INTERFACE_VERSION 2L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_MIDI_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_MIDI_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_PARAMETER_QUEUE_CAPACITY
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_PARAMETER_QUEUE_CAPACITY 1024L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_PARAMETER_DISPLAY_CACHE_MILLIS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_PARAMETER_DISPLAY_CACHE_MILLIS 100LL
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_MIDI_EVENT_STRIDE
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_MIDI_EVENT_STRIDE 3L
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_SILENCE_THRESHOLD
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_SILENCE_THRESHOLD 1.0E-6f
+#undef com_synthbot_audioplugin_vst_vst2_JVstHost24_UNKNOWN_TAIL_SECONDS
+#define com_synthbot_audioplugin_vst_vst2_JVstHost24_UNKNOWN_TAIL_SECONDS 5.0f
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost24
  * Method:    processDoubleReplacing
- * Signature: ([Ljavax/sound/midi/ShortMessage;[[D[[DIJ)V
+ * Signature: ([[D[[DIIJ)V
  */
 JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_processDoubleReplacing
-  (JNIEnv *, jclass, jobjectArray, jobjectArray, jobjectArray, jint, jlong);
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jint, jint, jlong);
+
+/*
+ * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost24
+ * Method:    processDoubleReplacingDirect
+ * Signature: ([Ljava/nio/DoubleBuffer;[Ljava/nio/DoubleBuffer;IIJ)V
+ */
+JNIEXPORT void JNICALL Java_com_synthbot_audioplugin_vst_vst2_JVstHost24_processDoubleReplacingDirect
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jint, jint, jlong);
 
 /*
  * Class:     com_synthbot_audioplugin_vst_vst2_JVstHost24